@@ -1,8 +1,24 @@
 package amazed;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 
 import amazed.maze.Amazed;
+import amazed.maze.BoardStorage;
+import amazed.maze.MazeServer;
 
 
 public class Main
@@ -12,41 +28,155 @@ public class Main
         String className = MethodHandles.lookup().lookupClass().getName();
         System.out.println("A-mazed: finds and displays paths to goal in a maze.\n"
                            + "\n"
-                           + "usage: java " + className + " MAP [SOLVER] [PERIOD]\n"
+                           + "usage: java " + className + " [OPTION]... MAP [SOLVER] [PERIOD]\n"
+                           + "       java " + className + " [OPTION]... --serve|--port=N|--socket=PATH MAP...\n"
                            + "\n"
                            + " MAP    filename with map file\n"
-                           + " SOLVER 'sequential' or 'parallel-N' solver, forking after N steps\n"
-                           + " PERIOD time in millisecond between steps (0: don't animate)");
+                           + " SOLVER 'sequential', 'parallel-N' solver, forking after N steps,\n"
+                           + "        'external' solver, keeping its search structures on disk,\n"
+                           + "        'incremental' solver, using LPA*,\n"
+                           + "        'hierarchical' solver, using HPA*,\n"
+                           + "        'jps' solver, using jump point search,\n"
+                           + "        'iddfs' solver, using parallel iterative-deepening search,\n"
+                           + "        or 'beam-K' solver, using beam search keeping K nodes per level;\n"
+                           + "        the last two keep no set of visited nodes\n"
+                           + " PERIOD time in millisecond between steps (0: don't animate)\n"
+                           + "\n"
+                           + "options:\n"
+                           + " --parallelism=N    run the solver with N worker threads\n"
+                           + "                    (default: number of available processors)\n"
+                           + " --thread-name=NAME name the worker threads NAME-0, NAME-1, ...\n"
+                           + "                    (default: amazed-solver)\n"
+                           + " --async            run forked tasks in FIFO instead of LIFO order\n"
+                           + " --lazy             read the rows of the map as the search reaches them\n"
+                           + " --off-heap         store the map and the search structures off-heap\n"
+                           + " --seed=N           derive the node ids from seed N, for reproducible runs\n"
+                           + "                    (default: random)\n"
+                           + " --histograms=DIR   write the latency distribution of every phase of the solve\n"
+                           + "                    to DIR/PHASE.hgrm\n"
+                           + " --serve            answer queries about the mazes read from standard input\n"
+                           + " --port=N           answer queries about the mazes on local TCP port N\n"
+                           + " --socket=PATH      answer queries about the mazes on Unix domain socket PATH\n"
+                           + "                    (see class amazed.maze.MazeServer for the queries)");
         System.exit(0);
     }
 
     private final static String SEQUENTIAL = "sequential";
     private final static String PARALLEL = "parallel";
+    private final static String EXTERNAL = "external";
+    private final static String INCREMENTAL = "incremental";
+    private final static String HIERARCHICAL = "hierarchical";
+    private final static String JUMP_POINT = "jps";
+    private final static String ITERATIVE_DEEPENING = "iddfs";
+    private final static String BEAM = "beam";
 
     private static String map;
-    private static boolean sequential = true;
+    private static String solverName = Amazed.SEQUENTIAL;
     private static int forkAfter = 0;
     private static int period = 500;
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+    private static String threadName = "amazed-solver";
+    private static boolean asyncMode = false;
+    private static BoardStorage storage = BoardStorage.IN_MEMORY;
+    private static long idSeed = ThreadLocalRandom.current().nextLong();
+    // where a server reads queries: standard input if serve and address
+    // is null; no server if not serve
+    private static boolean serve = false;
+    private static SocketAddress address;
+    private static List<String> maps;
+    // where the latency histograms are written, or null
+    private static File histograms;
+
+    // parse the options at the beginning of args, and return the other arguments
+    private static String[] parseOptions(String[] args)
+    {
+        int count = 0;
+        while (count < args.length && args[count].startsWith("--")) {
+            String option = args[count++];
+            if (option.equals("--async"))
+                asyncMode = true;
+            else if (option.equals("--lazy"))
+                storage = BoardStorage.LAZY;
+            else if (option.equals("--off-heap"))
+                storage = BoardStorage.OFF_HEAP;
+            else if (option.startsWith("--thread-name=") && option.length() > 14)
+                threadName = option.substring(14);
+            else if (option.startsWith("--histograms=") && option.length() > 13)
+                histograms = new File(option.substring(13));
+            else if (option.equals("--serve"))
+                serve = true;
+            else if (option.startsWith("--socket=") && option.length() > 9) {
+                serve = true;
+                address = UnixDomainSocketAddress.of(option.substring(9));
+            } else if (option.startsWith("--port=")) {
+                serve = true;
+                try {
+                    address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                    Integer.parseInt(option.substring(7)));
+                } catch (IllegalArgumentException e) {
+                    printUsageAndExit();
+                }
+            }
+            else if (option.startsWith("--seed=")) {
+                try {
+                    idSeed = Long.parseLong(option.substring(7));
+                } catch (NumberFormatException e) {
+                    printUsageAndExit();
+                }
+            } else if (option.startsWith("--parallelism=")) {
+                try {
+                    parallelism = Integer.parseInt(option.substring(14));
+                } catch (NumberFormatException e) {
+                    printUsageAndExit();
+                }
+                if (parallelism <= 0)
+                    printUsageAndExit();
+            } else
+                printUsageAndExit();
+        }
+        String[] rest = new String[args.length - count];
+        System.arraycopy(args, count, rest, 0, rest.length);
+        return rest;
+    }
 
     private static void parseArguments(String[] args)
     {
-        if (args.length >= 1) {
+        args = parseOptions(args);
+        if (serve) {
+            if (args.length == 0)
+                printUsageAndExit();
+            maps = Arrays.asList(args);
+        } else if (args.length >= 1) {
             map = args[0];
             if (args.length >= 2) {
                 String solver = args[1];
                 if (solver.equals(SEQUENTIAL))
-                    sequential = true;
+                    solverName = Amazed.SEQUENTIAL;
+                else if (solver.equals(EXTERNAL))
+                    solverName = Amazed.EXTERNAL;
+                else if (solver.equals(INCREMENTAL))
+                    solverName = Amazed.INCREMENTAL;
+                else if (solver.equals(HIERARCHICAL))
+                    solverName = Amazed.HIERARCHICAL;
+                else if (solver.equals(JUMP_POINT))
+                    solverName = Amazed.JUMP_POINT;
+                else if (solver.equals(ITERATIVE_DEEPENING))
+                    solverName = Amazed.ITERATIVE_DEEPENING;
                 else {
-                    sequential = false;
                     String[] splitSolver = solver.split("-");
                     if (splitSolver.length == 2) {
-                        if (splitSolver[0].equals(PARALLEL)) {
-                            try {
-                                forkAfter = Integer.parseInt(splitSolver[1]);
-                            } catch (NumberFormatException e) {
-                                printUsageAndExit();
-                            }
-                        } else
+                        if (splitSolver[0].equals(PARALLEL))
+                            solverName = Amazed.PARALLEL;
+                        else if (splitSolver[0].equals(BEAM))
+                            solverName = Amazed.BEAM;
+                        else
+                            printUsageAndExit();
+                        try {
+                            forkAfter = Integer.parseInt(splitSolver[1]);
+                        } catch (NumberFormatException e) {
+                            printUsageAndExit();
+                        }
+                        if (solverName.equals(Amazed.BEAM) && forkAfter <= 0)
                             printUsageAndExit();
                     } else
                         printUsageAndExit();
@@ -63,18 +193,90 @@ public class Main
             printUsageAndExit();
     }
 
+    // start measuring the peak usage of the heap from now
+    private static void resetPeakHeap()
+    {
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        }
+    }
+
+    // peak usage of the heap since the last reset, in bytes, including
+    // garbage not yet collected
+    private static long peakHeap()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    // answer queries until the end of standard input, or forever if
+    // listening to a socket
+    private static void serve()
+    throws InterruptedException
+    {
+        ForkJoinPool pool = Amazed.newPool(parallelism, threadName, asyncMode, null);
+        // standard output carries the replies: send anything else to the error stream
+        PrintStream replies = System.out;
+        if (address == null)
+            System.setOut(System.err);
+        try (MazeServer server = new MazeServer(maps, storage, idSeed, pool)) {
+            if (address == null)
+                server.serve(System.in, replies);
+            else {
+                System.err.println("Listening on " + address);
+                server.listen(address);
+            }
+            System.err.print(server.stats());
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     public static void main(String[] args)
     throws InterruptedException
     {
         parseArguments(args);
-        Amazed amazed = new Amazed(map, sequential, forkAfter, period);
+        if (serve) {
+            serve();
+            return;
+        }
+        Amazed amazed = new Amazed(map, solverName, forkAfter, period, storage, idSeed);
+        ForkJoinPool pool = Amazed.newPool(parallelism, threadName, asyncMode,
+            (thread, e) -> {
+                System.err.println("Solver thread " + thread.getName() + " failed:");
+                e.printStackTrace();
+            });
+        amazed.setPool(pool);
         Thread.sleep(5000); // Make sure the UI is up before start
-        long start = System.currentTimeMillis();
+        resetPeakHeap();
+        long start = System.nanoTime();
         amazed.solve();
-        long stop = System.currentTimeMillis();
-        long elapsed = stop - start;
+        long stop = System.nanoTime();
+        pool.shutdown();
+        long elapsed = (stop - start) / 1000000;
         System.out.println("Solving time: " + elapsed + " ms");
+        System.out.println("Peak heap: " + peakHeap() / 1024 + " KB");
+        System.out.println("Expanded nodes: " + amazed.expanded());
+        System.out.print(amazed.timings().summary());
+        if (histograms != null) {
+            try {
+                amazed.timings().write(histograms);
+            } catch (IOException e) {
+                System.err.println("Warning: cannot write histograms: " + e.getMessage());
+            }
+        }
         Thread.sleep(1000);
         amazed.showSolution();
+        // without a display, nothing reads the maze any longer
+        if (period < 0)
+            amazed.close();
     }
 }
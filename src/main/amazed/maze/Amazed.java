@@ -3,25 +3,43 @@ package amazed.maze;
 import java.awt.EventQueue;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
 
 import amazed.solver.SequentialSolver;
 import amazed.solver.ForkJoinSolver;
+import amazed.solver.ExternalSolver;
+import amazed.solver.IncrementalSolver;
+import amazed.solver.HierarchicalSolver;
+import amazed.solver.JumpPointSolver;
+import amazed.solver.IterativeDeepeningSolver;
+import amazed.solver.BeamSearchSolver;
 
 /**
  * <code>Amazed</code> is a simple application class that applies a
  * solver to a maze.
  * <p>
  * This class supports sequential solvers of class
- * <code>SequentialSolver</code> and fork/join solvers of class
- * <code>ForkJoinSolver</code>. It runs both using the common pool of
- * <code>java.util.concurrent.ForkJoinPool</code>; thus, the solvers
- * must be a subtype of
+ * <code>SequentialSolver</code>, fork/join solvers of class
+ * <code>ForkJoinSolver</code>, disk-based solvers of class
+ * <code>ExternalSolver</code>, incremental solvers of class
+ * <code>IncrementalSolver</code>, hierarchical solvers of class
+ * <code>HierarchicalSolver</code>, jump point search solvers of
+ * class <code>JumpPointSolver</code>, and, for searches where memory
+ * is short, iterative-deepening solvers of class
+ * <code>IterativeDeepeningSolver</code> and beam search solvers of
+ * class <code>BeamSearchSolver</code>. It runs all of them in a
+ * <code>java.util.concurrent.ForkJoinPool</code> &mdash; the common pool,
+ * unless another pool is set with <code>setPool</code>; thus, the
+ * solvers must be a subtype of
  * <code>RecursiveTask&lt;List&lt;Integer&gt;&gt;</code>. After creating an
  * instance from a map file, the solving process is started by calling
  * method <code>solve</code>. After <code>solve</code> terminates, the
  * solution can be displayed by calling method
- * <code>showSolution</code>.
+ * <code>showSolution</code>. Method <code>timings</code> returns the
+ * latencies of the phases of the solve, and method <code>close</code>
+ * releases the memory of a maze stored off-heap.
  *
  * @author  Carlo A. Furia
  */
@@ -31,6 +49,48 @@ public class Amazed
     private Maze maze;
     private RecursiveTask<List<Integer>> solver;
     private List<Integer> path;
+    private SolutionCache cache;
+    private ForkJoinPool pool;
+
+    /**
+     * Name of the solver using <code>SequentialSolver</code>.
+     */
+    public static final String SEQUENTIAL = "sequential";
+
+    /**
+     * Name of the solver using <code>ForkJoinSolver</code>.
+     */
+    public static final String PARALLEL = "parallel";
+
+    /**
+     * Name of the solver using <code>ExternalSolver</code>.
+     */
+    public static final String EXTERNAL = "external";
+
+    /**
+     * Name of the solver using <code>IncrementalSolver</code>.
+     */
+    public static final String INCREMENTAL = "incremental";
+
+    /**
+     * Name of the solver using <code>HierarchicalSolver</code>.
+     */
+    public static final String HIERARCHICAL = "hierarchical";
+
+    /**
+     * Name of the solver using <code>JumpPointSolver</code>.
+     */
+    public static final String JUMP_POINT = "jps";
+
+    /**
+     * Name of the solver using <code>IterativeDeepeningSolver</code>.
+     */
+    public static final String ITERATIVE_DEEPENING = "iddfs";
+
+    /**
+     * Name of the solver using <code>BeamSearchSolver</code>.
+     */
+    public static final String BEAM = "beam";
 
     /**
      * Creates a maze reading from map file <code>map</code>.
@@ -55,7 +115,83 @@ public class Amazed
      */
     public Amazed(String map, boolean sequentialSolver, int forkAfter, int animationDelay)
     {
-        maze = new Maze(map);
+        this(map, sequentialSolver ? SEQUENTIAL : PARALLEL, forkAfter, animationDelay);
+    }
+
+    /**
+     * Creates a maze reading from map file <code>map</code>.
+     *
+     * @param map              the name of the map file describing the maze to be searched
+     * @param solverName       the solver used to search the maze: one of
+     *                         {@link #SEQUENTIAL}, {@link #PARALLEL},
+     *                         {@link #EXTERNAL}, {@link #INCREMENTAL},
+     *                         {@link #HIERARCHICAL}, {@link #JUMP_POINT},
+     *                         {@link #ITERATIVE_DEEPENING}, and {@link #BEAM}
+     * @param forkAfter        the number of steps (visited nodes) after
+     *                         which a parallel task is forked, for the
+     *                         {@link #PARALLEL} solver; the width of the
+     *                         beam, for the {@link #BEAM} solver
+     * @param animationDelay   milliseconds of pause between a step and
+     *                         the next one in the animation of the
+     *                         solution search, as in
+     *                         {@link #Amazed(String, boolean, int, int)}
+     */
+    public Amazed(String map, String solverName, int forkAfter, int animationDelay)
+    {
+        this(map, solverName, forkAfter, animationDelay, BoardStorage.IN_MEMORY);
+    }
+
+    /**
+     * Creates a maze reading from map file <code>map</code>, storing
+     * its cells as described by <code>storage</code>.
+     *
+     * @param map              the name of the map file describing the maze to be searched
+     * @param solverName       the solver used to search the maze, as in
+     *                         {@link #Amazed(String, String, int, int)}
+     * @param forkAfter        the number of steps (visited nodes) after
+     *                         which a parallel task is forked, as in
+     *                         {@link #Amazed(String, String, int, int)}
+     * @param animationDelay   milliseconds of pause between a step and
+     *                         the next one in the animation of the
+     *                         solution search, as in
+     *                         {@link #Amazed(String, boolean, int, int)}
+     * @param storage          how the cells of the maze are stored;
+     *                         {@link BoardStorage#LAZY} and
+     *                         {@link BoardStorage#OFF_HEAP} are meant for
+     *                         large maps, without graphical display
+     */
+    public Amazed(String map, String solverName, int forkAfter, int animationDelay,
+                  BoardStorage storage)
+    {
+        this(map, solverName, forkAfter, animationDelay, storage,
+             ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a maze reading from map file <code>map</code>, storing
+     * its cells as described by <code>storage</code>, with node
+     * identifiers determined by a seed; runs with
+     * the same map, solver, and seed explore the maze in the same
+     * order, as long as the solver is sequential.
+     *
+     * @param map              the name of the map file describing the maze to be searched
+     * @param solverName       the solver used to search the maze, as in
+     *                         {@link #Amazed(String, String, int, int)}
+     * @param forkAfter        the number of steps (visited nodes) after
+     *                         which a parallel task is forked, as in
+     *                         {@link #Amazed(String, String, int, int)}
+     * @param animationDelay   milliseconds of pause between a step and
+     *                         the next one in the animation of the
+     *                         solution search, as in
+     *                         {@link #Amazed(String, boolean, int, int)}
+     * @param storage          how the cells of the maze are stored, as in
+     *                         {@link #Amazed(String, String, int, int, BoardStorage)}
+     * @param idSeed           the seed of the node identifiers of the maze
+     */
+    public Amazed(String map, String solverName, int forkAfter, int animationDelay,
+                  BoardStorage storage, long idSeed)
+    {
+        maze = new Maze(map, storage, idSeed);
         if (animationDelay >= 0) {
             EventQueue.invokeLater(new Runnable() {
                 @Override
@@ -66,25 +202,167 @@ public class Amazed
             });
         }
         maze.setDelay(animationDelay);
-        if (sequentialSolver)
-            solver = new SequentialSolver(maze);
-        else
-            solver = new ForkJoinSolver(maze, forkAfter);
+        long begin = System.nanoTime();
+        solver = createSolver(solverName, forkAfter);
+        maze.timings().record(Phase.PREPROCESS, begin);
+    }
+
+    private RecursiveTask<List<Integer>> createSolver(String solverName, int forkAfter)
+    {
+        switch (solverName) {
+        case SEQUENTIAL:
+            return new SequentialSolver(maze);
+        case PARALLEL:
+            return new ForkJoinSolver(maze, forkAfter);
+        case EXTERNAL:
+            return new ExternalSolver(maze);
+        case INCREMENTAL:
+            return new IncrementalSolver(maze);
+        case HIERARCHICAL:
+            return new HierarchicalSolver(maze);
+        case JUMP_POINT:
+            return new JumpPointSolver(maze);
+        case ITERATIVE_DEEPENING:
+            return new IterativeDeepeningSolver(maze);
+        case BEAM:
+            return new BeamSearchSolver(maze, forkAfter);
+        default:
+            throw new IllegalArgumentException("Unknown solver: " + solverName);
+        }
+    }
+
+    /**
+     * Makes <code>solve</code> look up the maze in a cache of
+     * solutions before searching it, and store the outcome of every
+     * search in the cache. That a maze has no solution is only stored
+     * when a complete solver (see <code>SequentialSolver.isComplete</code>)
+     * found no path.
+     *
+     * @param cache   the cache of solutions; if <code>null</code>,
+     *                <code>solve</code> always searches the maze
+     */
+    public void setSolutionCache(SolutionCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Makes <code>solve</code> run the solver in a given pool instead
+     * of the common pool. The pool is not shut down by this class.
+     *
+     * @param pool   the pool running the solver; if <code>null</code>,
+     *               <code>solve</code> uses the common pool
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a pool for running solvers. Its worker threads are named
+     * <code>threadName-i</code>, where <code>i</code> is the index of the
+     * worker in the pool; the index of a worker never changes, so
+     * the name can be used to pin it to a processor.
+     *
+     * @param parallelism   the number of worker threads of the pool
+     * @param threadName    the prefix of the names of the worker threads
+     * @param asyncMode     if <code>true</code>, the workers run their forked
+     *                      tasks in FIFO order; otherwise, in LIFO order,
+     *                      as in the common pool
+     * @param handler       the handler of exceptions that terminate a worker
+     *                      thread; if <code>null</code>, the default handler
+     *                      of the thread is used
+     * @return              a new pool, to be shut down by the caller
+     * @throws IllegalArgumentException   if <code>parallelism</code> is not positive
+     */
+    public static ForkJoinPool newPool(int parallelism, String threadName, boolean asyncMode,
+                                       Thread.UncaughtExceptionHandler handler)
+    {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(threadName + "-" + thread.getPoolIndex());
+                return thread;
+            }
+        };
+        return new ForkJoinPool(parallelism, factory, handler, asyncMode);
     }
 
     /**
      * Runs the solver on the maze, waits for termination, and prints
-     * to screen the outcome of the search.
+     * to screen the outcome of the search. If a solution cache is
+     * set and contains a solution for the maze, that solution is used
+     * without searching, once validated; a cached absence of solution
+     * is checked by flooding the maze from the start node.
      */
     public void solve()
     {
-        ForkJoinPool pool = ForkJoinPool.commonPool();
-        path = pool.invoke(solver);
-        if (path != null && maze.isValidPath(path))
+        long begin = System.nanoTime();
+        boolean valid = false;
+        int[] cached = cache == null ? null : cache.get(maze);
+        if (cached != null) {
+            path = cached.length == 0 ? null : maze.cellIds(cached);
+            valid = path != null && maze.isValidPath(path);
+            // an invalid cached path can only come from a hash collision,
+            // and a wrong absence of solution from an incomplete solver
+            if (path != null ? !valid
+                : new BitboardFlood(maze).isGoalReachable(maze.cellIndex(maze.start())))
+                cached = null;
+        }
+        if (cached == null) {
+            long search = System.nanoTime();
+            path = (pool == null ? ForkJoinPool.commonPool() : pool).invoke(solver);
+            maze.timings().record(Phase.SEARCH, search);
+            valid = path != null && maze.isValidPath(path);
+            if (cache != null && (valid || isComplete()))
+                cache.put(maze, valid ? path : null);
+        }
+        maze.timings().record(Phase.SOLVE, begin);
+        if (valid)
             System.out.println("Goal found :-D");
         else
             System.out.println("Search completed: no goal found :-(");
-        pool.shutdown();
+    }
+
+    /**
+     * Returns the number of nodes expanded by the solver in its last
+     * search, as reported by <code>SequentialSolver.expanded</code>.
+     *
+     * @return   the number of expanded nodes; <code>0</code> if the
+     *           solver does not keep track of them, or the solution was
+     *           taken from the cache
+     */
+    public long expanded()
+    {
+        return solver instanceof SequentialSolver ? ((SequentialSolver) solver).expanded() : 0;
+    }
+
+    // whether a search of the solver without a path shows there is none
+    private boolean isComplete()
+    {
+        return solver instanceof SequentialSolver && ((SequentialSolver) solver).isComplete();
+    }
+
+    /**
+     * Returns the latencies recorded while reading, preprocessing,
+     * and solving the maze.
+     *
+     * @return   the timings of the maze
+     */
+    public Timings timings()
+    {
+        return maze.timings();
+    }
+
+    /**
+     * Releases the off-heap memory of the maze, if any. The solution
+     * cannot be displayed after the maze is closed.
+     */
+    public void close()
+    {
+        maze.close();
     }
 
     /**
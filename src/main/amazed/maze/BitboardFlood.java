@@ -0,0 +1,374 @@
+package amazed.maze;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>BitboardFlood</code> answers reachability and distance
+ * queries on a maze by flooding whole words of cells at a time.
+ * <p>
+ * Every row of the maze is stored as a bitboard: a run of
+ * <code>long</code>s where bit <code>b</code> of word <code>w</code>
+ * stands for the cell in column <code>64 * w + b</code>. A set of
+ * cells, such as the frontier of a breadth-first search, is a
+ * bitboard per row too. Expanding a set by one step shifts each word
+ * one bit east and one bit west (carrying bits across words), merges
+ * in the words above and below, and masks the result with the
+ * accessible cells; this moves up to 64 cells with a handful of
+ * instructions.
+ * <p>
+ * Methods <code>layerSizes</code> and <code>distanceToGoal</code>
+ * compute breadth-first layers one step at a time. Only the words
+ * that hold frontier cells, and their neighbors, are expanded; when a
+ * layer has many such words, they are expanded in parallel by
+ * fork/join tasks, which claim each word of the next layer with a
+ * compare-and-set. Method <code>isGoalReachable</code> does not need
+ * distances, and floods faster: it fills every row along its open
+ * runs in one pass, using the carry propagation of an integer
+ * addition, and sweeps the rows down and up until nothing changes.
+ */
+
+public class BitboardFlood
+{
+    // number of frontier words expanded sequentially by a single task
+    private static final int CHUNK = 1 << 11;
+
+    private static final VarHandle CLAIMS =
+        MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final int rows;
+    private final int cols;
+    private final int words;
+    // bitboards, words consecutive words per row
+    private final long[] open;
+    private final long[] goals;
+
+    /**
+     * Builds the bitboards of the accessible cells and of the goals
+     * of a maze.
+     *
+     * @param maze   the maze to be flooded
+     */
+    public BitboardFlood(Maze maze)
+    {
+        Board board = maze.getBoard();
+        rows = board.getRows();
+        cols = board.getCols();
+        words = (cols + 63) >>> 6;
+        open = new long[rows * words];
+        goals = new long[rows * words];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                Cell cell = board.getCell(row, col);
+                int word = row * words + (col >>> 6);
+                if (cell.isAccessible())
+                    open[word] |= 1L << col;
+            }
+        }
+        for (int index: board.getGoals())
+            goals[index / cols * words + (index % cols >>> 6)] |= 1L << index % cols;
+    }
+
+    /**
+     * Tests whether a goal can be reached from a cell.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        <code>true</code> if there is a path from the cell at
+     *                <code>index</code> to a goal; <code>false</code> otherwise
+     */
+    public boolean isGoalReachable(int index)
+    {
+        if (!isOpen(index))
+            return false;
+        long[] reached = new long[rows * words];
+        reached[word(index)] = bit(index);
+        long[] row = new long[words];
+        long[] east = new long[words];
+        // sweep in which each row last changed; a row is only filled
+        // again after it or one of its neighbors has changed
+        int[] changedIn = new int[rows];
+        Arrays.fill(changedIn, -2);
+        changedIn[index / cols] = 0;
+        boolean changed = true;
+        for (int sweep = 0; changed; sweep++) {
+            changed = false;
+            for (int i = 0; i < rows; i++) {
+                int r = sweep % 2 == 0 ? i : rows - 1 - i;
+                int latest = changedIn[r];
+                if (r > 0)
+                    latest = Math.max(latest, changedIn[r - 1]);
+                if (r + 1 < rows)
+                    latest = Math.max(latest, changedIn[r + 1]);
+                if (latest < sweep - 1)
+                    continue;
+                int base = r * words;
+                // flow in from the rows above and below
+                for (int w = 0; w < words; w++) {
+                    long inflow = reached[base + w];
+                    if (r > 0)
+                        inflow |= reached[base - words + w];
+                    if (r + 1 < rows)
+                        inflow |= reached[base + words + w];
+                    row[w] = inflow & open[base + w];
+                }
+                fillRow(row, base, east);
+                boolean goal = false;
+                for (int w = 0; w < words; w++) {
+                    if (row[w] != reached[base + w]) {
+                        reached[base + w] = row[w];
+                        changedIn[r] = sweep;
+                        changed = true;
+                    }
+                    goal |= (row[w] & goals[base + w]) != 0;
+                }
+                if (goal)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the length of a shortest path from a cell to the
+     * nearest goal.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        the number of steps from <code>index</code> to the
+     *                nearest goal; <code>-1</code> if no goal can be reached
+     */
+    public int distanceToGoal(int index)
+    {
+        Layers layers = new Layers(index);
+        while (!layers.isEmpty()) {
+            if (layers.hasGoal())
+                return layers.distance();
+            layers.expand();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of cells at every distance from a cell.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        an array whose element <code>d</code> is the number of
+     *                cells at distance <code>d</code> from <code>index</code>;
+     *                its length is one more than the distance of the
+     *                farthest reachable cell
+     */
+    public int[] layerSizes(int index)
+    {
+        Layers layers = new Layers(index);
+        int[] sizes = new int[16];
+        int count = 0;
+        while (!layers.isEmpty()) {
+            if (count == sizes.length)
+                sizes = Arrays.copyOf(sizes, 2 * count);
+            sizes[count++] = layers.size();
+            layers.expand();
+        }
+        return Arrays.copyOf(sizes, count);
+    }
+
+    private boolean isOpen(int index)
+    {
+        return (open[word(index)] & bit(index)) != 0;
+    }
+
+    // bitboard word holding cell index
+    private int word(int index)
+    {
+        return (index / cols) * words + (index % cols >>> 6);
+    }
+
+    private long bit(int index)
+    {
+        return 1L << (index % cols);
+    }
+
+    // extend the cells in row along the runs of accessible cells of
+    // the row starting at word base
+    private void fillRow(long[] row, int base, long[] east)
+    {
+        // adding the cells to the mask carries through every run,
+        // from the cells eastwards
+        long carry = 0;
+        for (int w = 0; w < words; w++) {
+            long mask = open[base + w];
+            long sum = mask + row[w];
+            long carryOut = Long.compareUnsigned(sum, mask) < 0 ? 1 : 0;
+            long total = sum + carry;
+            carryOut |= Long.compareUnsigned(total, sum) < 0 ? 1 : 0;
+            east[w] = ((total ^ mask) & mask) | row[w];
+            carry = carryOut;
+        }
+        // the same, westwards, on bit-reversed words
+        carry = 0;
+        for (int w = words - 1; w >= 0; w--) {
+            long mask = Long.reverse(open[base + w]);
+            long cells = Long.reverse(row[w]);
+            long sum = mask + cells;
+            long carryOut = Long.compareUnsigned(sum, mask) < 0 ? 1 : 0;
+            long total = sum + carry;
+            carryOut |= Long.compareUnsigned(total, sum) < 0 ? 1 : 0;
+            row[w] = east[w] | Long.reverse(((total ^ mask) & mask) | cells);
+            carry = carryOut;
+        }
+    }
+
+    // breadth-first layers from a cell, as bitboards
+    private class Layers
+    {
+        private final long[] reached;
+        private long[] frontier;
+        private long[] next;
+        // the non-empty words of the frontier, and of the next layer
+        private int[] active;
+        private int[] nextActive;
+        private int activeSize;
+        private final AtomicInteger nextActiveSize = new AtomicInteger();
+        // layer in which each word of the next layer was last claimed
+        private final int[] claims;
+        private int size;
+        private boolean goal;
+        private int distance = 0;
+
+        Layers(int index)
+        {
+            int cells = rows * words;
+            reached = new long[cells];
+            frontier = new long[cells];
+            next = new long[cells];
+            active = new int[cells];
+            nextActive = new int[cells];
+            claims = new int[cells];
+            Arrays.fill(claims, -1);
+            if (isOpen(index)) {
+                int word = word(index);
+                reached[word] = frontier[word] = bit(index);
+                active[activeSize++] = word;
+                size = 1;
+                goal = (goals[word] & bit(index)) != 0;
+            }
+        }
+
+        boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        boolean hasGoal()
+        {
+            return goal;
+        }
+
+        int distance()
+        {
+            return distance;
+        }
+
+        void expand()
+        {
+            nextActiveSize.set(0);
+            if (activeSize > CHUNK)
+                new ExpandTask(this, 0, activeSize).invoke();
+            else
+                expandWords(0, activeSize);
+            // the old frontier becomes the buffer for the next layer
+            for (int i = 0; i < activeSize; i++)
+                frontier[active[i]] = 0;
+            long[] swap = frontier;
+            frontier = next;
+            next = swap;
+            int[] swapActive = active;
+            active = nextActive;
+            nextActive = swapActive;
+            activeSize = nextActiveSize.get();
+            distance += 1;
+            size = 0;
+            goal = false;
+            for (int i = 0; i < activeSize; i++) {
+                int word = active[i];
+                size += Long.bitCount(frontier[word]);
+                goal |= (frontier[word] & goals[word]) != 0;
+            }
+        }
+
+        // expand the words around active[from, to) into the next layer
+        void expandWords(int from, int to)
+        {
+            int[] added = new int[5 * (to - from)];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int word = active[i];
+                int w = word % words;
+                if (expandWord(word))
+                    added[count++] = word;
+                if (w > 0 && expandWord(word - 1))
+                    added[count++] = word - 1;
+                if (w + 1 < words && expandWord(word + 1))
+                    added[count++] = word + 1;
+                if (word >= words && expandWord(word - words))
+                    added[count++] = word - words;
+                if (word + words < frontier.length && expandWord(word + words))
+                    added[count++] = word + words;
+            }
+            int offset = nextActiveSize.getAndAdd(count);
+            System.arraycopy(added, 0, nextActive, offset, count);
+        }
+
+        // claim word of the next layer and compute it; true if it is not empty
+        private boolean expandWord(int word)
+        {
+            int claim = claims[word];
+            if (claim == distance || !CLAIMS.compareAndSet(claims, word, claim, distance))
+                return false;
+            int w = word % words;
+            long cells = frontier[word];
+            long east = (cells << 1) | (w > 0 ? frontier[word - 1] >>> 63 : 0);
+            long west = (cells >>> 1) | (w + 1 < words ? frontier[word + 1] << 63 : 0);
+            long vertical = (word >= words ? frontier[word - words] : 0)
+                | (word + words < frontier.length ? frontier[word + words] : 0);
+            long added = (east | west | vertical) & open[word] & ~reached[word];
+            if (added == 0)
+                return false;
+            next[word] = added;
+            reached[word] |= added;
+            return true;
+        }
+    }
+
+    // expands the words around active[from, to) of a layer, in parallel
+    private static class ExpandTask extends RecursiveAction
+    {
+        private final Layers layers;
+        private final int from;
+        private final int to;
+
+        ExpandTask(Layers layers, int from, int to)
+        {
+            this.layers = layers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= CHUNK) {
+                layers.expandWords(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ExpandTask(layers, from, middle), new ExpandTask(layers, middle, to));
+        }
+    }
+}
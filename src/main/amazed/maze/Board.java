@@ -1,14 +1,11 @@
 package amazed.maze;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.io.*;
 
@@ -16,41 +13,78 @@ import java.io.*;
 public class Board
 {
 
-    // after creation, read-only access (except for operation markPath)
+    // after creation, read-only access (except for operations markPath and toggleBrick);
+    // null if the cells are provided by a subclass
     private Cell[][] board;
     private int nRows;
     private int nCols;
 
+    // hash of the dimensions and tiles of the board as read from the map;
+    // independent of the node ids
+    private long contentHash;
+
     // players currently on the board
     // player identifier --> player object
     private final Map<Integer, Player> players;
     // count of number of registered players, to ensure unique player ids
     private final AtomicInteger nPlayers = new AtomicInteger();
+    // player identifier --> cell index of the player, and
+    // cell index --> number of players on the cell
+    private final Occupancy occupancy;
+
+    // unique node id <--> cell index row*nCols + col: the ids are the
+    // images of the cell indexes under a permutation of [0, 2*nRows*nCols)
+    // determined by a seed, shifted to [-nRows*nCols, nRows*nCols)
+    private IdPermutation ids;
+
+    // cell index row*nCols + col --> mask of the directions in which
+    // the adjacent cell is accessible (bit Direction.bit())
+    // computed when the map is read, updated by toggleBrick;
+    // null if the masks are computed on demand by a subclass
+    private byte[] openDirections;
 
-    // unique node id --> coordinate position of node on board
-    // after creation, read-only access
-    private Map<Integer, Position> idToCell;
+    // cell index --> whether the cell is a goal (bit index & 63 of word
+    // index >>> 6), the indexes of the goal cells in increasing order,
+    // and their ids in increasing order; found when the map is read, as
+    // bricks can never become goals
+    private long[] goalBits;
+    private int[] goals;
+    private int[] goalIds;
 
     // empty board
     Board(int nRows, int nCols)
     {
-        board = new Cell[nRows][nCols];
+        this(nRows, nCols, new Cell[nRows][nCols], 0);
+    }
+
+    // board with cells, or without cells if the subclass provides
+    // them by overriding getCell, setCell, and getOpenDirections;
+    // the node ids are determined by idSeed
+    Board(int nRows, int nCols, Cell[][] board, long idSeed)
+    {
+        this.board = board;
         this.nRows = nRows;
         this.nCols = nCols;
+        ids = new IdPermutation(2L * nRows * nCols, idSeed);
         players = new ConcurrentHashMap<>();
-        idToCell = new HashMap<>();
+        occupancy = new Occupancy(nRows * nCols);
+        setGoals(new int[0]);
     }
 
-    // board from map `filename'
-    Board(String filename)
+    // board from map `filename', with node ids determined by idSeed
+    Board(String filename, long idSeed)
     {
         try {
-            readMap(filename);
+            readMap(filename, idSeed);
+            computeOpenDirections();
+            computeContentHash();
+            computeGoals();
         } catch (IOException e) {
             System.err.println("Error: cannot open map file " + filename);
             System.exit(1);
         }
         players = new ConcurrentHashMap<>();
+        occupancy = new Occupancy(nRows * nCols);
     }
 
     Cell getCell(int row, int col)
@@ -60,27 +94,119 @@ public class Board
 
     Cell getCell(Position position)
     {
-        return board[position.getRow()][position.getCol()];
+        return getCell(position.getRow(), position.getCol());
     }
 
     Cell getCell(int id)
     {
-        return getCell(idToCell.get(id));
+        return getCell(getPosition(id));
+    }
+
+    // replace the cell at row, col; thread unsafe
+    void setCell(int row, int col, Cell cell)
+    {
+        board[row][col] = cell;
     }
 
     Position getPosition(int id)
     {
-        return idToCell.get(id);
+        int index = getIndex(id);
+        if (index < 0)
+            return null;
+        return new Position(index / nCols, index % nCols);
+    }
+
+    // cell index row*nCols + col of node id, or -1 if there is no such node
+    int getIndex(int id)
+    {
+        long cells = (long) nRows * nCols;
+        long value = id + cells;
+        if (value < 0 || value >= 2 * cells)
+            return -1;
+        long index = ids.backward(value);
+        return index < cells ? (int) index : -1;
+    }
+
+    // node id of cell index row*nCols + col
+    int getId(int index)
+    {
+        return (int) (ids.forward(index) - (long) nRows * nCols);
+    }
+
+    // is cell index a goal? a heart remains a goal after it is marked as found
+    boolean isHeart(int index)
+    {
+        return (goalBits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // indexes of the goal cells in increasing order; not to be modified
+    int[] getGoals()
+    {
+        return goals;
+    }
+
+    // set the goals to cell indexes goals, in increasing order, for
+    // subclasses that find them without reading all cells
+    void setGoals(int[] goals)
+    {
+        long[] bits = new long[(int) (((long) nRows * nCols + 63) >>> 6)];
+        int[] sortedIds = new int[goals.length];
+        for (int i = 0; i < goals.length; i++) {
+            bits[goals[i] >>> 6] |= 1L << goals[i];
+            sortedIds[i] = getId(goals[i]);
+        }
+        Arrays.sort(sortedIds);
+        this.goals = goals;
+        goalBits = bits;
+        goalIds = sortedIds;
+    }
+
+    // is node id a goal? a binary search of the goal ids, which does
+    // not invert the permutation of ids as getIndex does
+    boolean isGoalId(int id)
+    {
+        return Arrays.binarySearch(goalIds, id) >= 0;
+    }
+
+    private void computeGoals()
+    {
+        int count = 0;
+        int[] found = new int[16];
+        for (int row = 0; row < nRows; row++) {
+            for (int col = 0; col < nCols; col++) {
+                if (getCell(row, col).isHeart()) {
+                    if (count == found.length)
+                        found = Arrays.copyOf(found, 2 * count);
+                    found[count++] = row * nCols + col;
+                }
+            }
+        }
+        setGoals(Arrays.copyOf(found, count));
+    }
+
+    int getOpenDirections(int row, int col)
+    {
+        return getOpenDirections(row * nCols + col);
+    }
+
+    int getOpenDirections(int index)
+    {
+        return openDirections[index];
+    }
+
+    long getContentHash()
+    {
+        return contentHash;
     }
 
     int getWidth()
     {
-        return nCols * board[0][0].getWidth();
+        return nCols * getCell(0, 0).getWidth();
     }
 
     int getHeight()
     {
-        return nRows * board[0][0].getHeight();
+        return nRows * getCell(0, 0).getHeight();
     }
 
     int getRows()
@@ -106,76 +232,110 @@ public class Board
     {
         List<Position> positionPath = pathToPositions(path);
         for (Position position: positionPath) {
-            int row = position.getRow(), col = position.getCol();
-            board[row][col] = getCell(position).marked();
+            setCell(position.getRow(), position.getCol(), getCell(position).marked());
         }
     }
 
-    private void readMap(String mapFile)
+    // read the cells in parallel, see MapParser
+    private void readMap(String mapFile, long idSeed)
     throws FileNotFoundException, IOException
     {
-        Cell cell;
-        int row = 0, col = 0, nId = 0;
-        List<Integer> ids = null;
-        try (BufferedReader br = new BufferedReader(new FileReader(mapFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // remove whitespaces
-                line = line.replaceAll("\\s", "");
-                StringReader lineReader = new StringReader(line);
-                int ch, id = 0;
-                line_loop:
-                while ((ch = lineReader.read()) != -1) {
-                    switch (ch) {
-                    case '@':
-                        break line_loop;
-                    case '$':
-                        Pattern p = Pattern.compile("^\\$(\\d+),(\\d+)$");
-                        Matcher m = p.matcher(line);
-                        if (m.find()) {
-                            nRows = Integer.parseInt(m.group(1));
-                            nCols = Integer.parseInt(m.group(2));
-                            board = new Cell[nRows][nCols];
-                            int numCells = nRows*nCols;
-                            ids = new ArrayList<>(2*numCells);
-                            for (int i = -numCells; i < numCells; i++)
-                                ids.add(i);
-                            Collections.shuffle(ids);
-                            idToCell = new HashMap<>(numCells);
-                        }
-                        break line_loop;
-                    default:
-                        if (row < nRows && col < nCols)
-                            id = ids.get(nId++);
-                        if (ch == Tile.EMPTY.getChar())
-                            cell = new Cell(Tile.EMPTY, id);
-                        else if (ch == Tile.SOLID.getChar())
-                            cell = new Cell(Tile.SOLID, id);
-                        else if (ch == Tile.BRICK.getChar())
-                            cell = new Cell(Tile.BRICK, id);
-                        else if (ch == Tile.HEART.getChar())
-                            cell = new Cell(Tile.HEART, id);
-                        else {
-                            System.out.println("Unrecognized symbol " +
-                                               Character.toString((char) ch) + " on " +
-                                               "row " + row + " column " + col);
-                            System.out.println("... using empty cell instead.");
-                            cell = new Cell(Tile.EMPTY, id);
-                        }
-                    }
-                    // Ignore rows and columns beyond the declared ones
-                    if (row < nRows && col < nCols) {
-                        board[row][col] = cell;
-                        idToCell.put(id, new Position(row, col));
-                        col += 1;
-                    }
-                }
-                if (nCols > 0 && col == nCols) {
-                    row += 1;
-                    col = 0;
+        MazeEvents.MapRead event = MazeEvents.enabled() ? new MazeEvents.MapRead() : null;
+        if (event != null)
+            event.begin();
+        try (MapParser parser = new MapParser(mapFile)) {
+            nRows = parser.getRows();
+            nCols = parser.getCols();
+            board = new Cell[nRows][nCols];
+            ids = new IdPermutation(2L * nRows * nCols, idSeed);
+            parser.parse(board, this::getId);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.file = mapFile;
+            event.rows = nRows;
+            event.cols = nCols;
+            event.commit();
+        }
+    }
+
+    private void computeOpenDirections()
+    {
+        openDirections = new byte[nRows * nCols];
+        for (int row = 0; row < nRows; row++) {
+            for (int col = 0; col < nCols; col++) {
+                int open = 0;
+                for (Direction direction: Direction.values()) {
+                    if (isAccessible(row + direction.getRowStep(),
+                                     col + direction.getColStep()))
+                        open |= direction.bit();
                 }
+                openDirections[row * nCols + col] = (byte) open;
+            }
+        }
+    }
+
+    // turn brick cell index into an empty cell, or vice versa;
+    // return whether the cell is accessible afterwards; thread unsafe
+    boolean toggleBrick(int index)
+    {
+        int row = index / nCols, col = index % nCols;
+        Cell cell = getCell(row, col);
+        Tile tile;
+        if (cell.getTile() == Tile.BRICK)
+            tile = Tile.EMPTY;
+        else if (cell.getTile() == Tile.EMPTY)
+            tile = Tile.BRICK;
+        else
+            throw new IllegalArgumentException("Cell " + new Position(row, col)
+                                               + " is neither a brick nor empty");
+        Cell newCell = new Cell(tile, cell.getId());
+        setCell(row, col, newCell);
+        contentHash += cellHash(index, tile) - cellHash(index, cell.getTile());
+        // the cell is open from each neighbor if it is accessible
+        boolean accessible = newCell.isAccessible();
+        if (openDirections == null)
+            return accessible;
+        for (Direction direction: Direction.values()) {
+            int newRow = row + direction.getRowStep(), newCol = col + direction.getColStep();
+            if (isOnBoard(newRow, newCol)) {
+                int bit = direction.opposite().bit();
+                int neighbor = newRow * nCols + newCol;
+                if (accessible)
+                    openDirections[neighbor] |= bit;
+                else
+                    openDirections[neighbor] &= ~bit;
             }
         }
+        return accessible;
+    }
+
+    boolean isBrick(int index)
+    {
+        return getCell(index / nCols, index % nCols).getTile() == Tile.BRICK;
+    }
+
+    // sum of the mixed (cell index, tile) pairs of all cells, so that
+    // changing one tile only changes one term
+    void computeContentHash()
+    {
+        long hash = mix(((long) nRows << 32) | nCols);
+        for (int row = 0; row < nRows; row++)
+            for (int col = 0; col < nCols; col++)
+                hash += cellHash(row * nCols + col, getCell(row, col).getTile());
+        contentHash = hash;
+    }
+
+    private static long cellHash(int index, Tile tile)
+    {
+        return mix((long) index * Tile.values().length + tile.ordinal());
+    }
+
+    // finalizer of the SplitMix64 generator
+    static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
     String asText()
@@ -184,7 +344,7 @@ public class Board
         for (int row = 0; row < nRows; row++) {
             for (int col = 0; col < nCols; col++) {
                 result.append(' ');
-                result.append(board[row][col].getText());
+                result.append(getCell(row, col).getText());
             }
             result.append('\n');
         }
@@ -195,16 +355,26 @@ public class Board
     Board consistentBoard()
     {
         Board result = new Board(nRows, nCols);
+        result.ids = ids;
+        result.goals = goals;
+        result.goalBits = goalBits;
+        result.goalIds = goalIds;
         for (int row = 0; row < nRows; row++) {
             for (int col = 0; col < nCols; col++) {
-                Cell cell = board[row][col];
+                Cell cell = getCell(row, col);
                 result.board[row][col] = new Cell(cell.getTile(), cell.getId());
             }
         }
+        if (openDirections != null)
+            result.openDirections = openDirections;
+        else
+            result.computeOpenDirections();
         for (Player player: players.values()) {
-            Position pos = player.getPosition();
-            Player newPlayer = new Player(player.getId(), player.getName());
-            newPlayer.onBoard(result, pos.getRow(), pos.getCol());
+            int index = occupancy.cellOf(player.getId());
+            if (index != Occupancy.NOWHERE) {
+                int row = index / nCols, col = index % nCols;
+                result.board[row][col] = result.board[row][col].with(player);
+            }
         }
         return result;
     }
@@ -217,36 +387,22 @@ public class Board
 
     boolean isAccessible(int row, int col)
     {
-        return isOnBoard(row, col) && board[row][col].isAccessible();
+        return isOnBoard(row, col) && getCell(row, col).isAccessible();
     }
 
     Position move(Position position, Direction direction)
     {
-        int newRow = position.getRow(), newCol = position.getCol();
-        switch (direction) {
-        case NORTH:
-            newRow -= 1;
-            break;
-        case SOUTH:
-            newRow += 1;
-            break;
-        case WEST:
-            newCol -= 1;
-            break;
-        case EAST:
-            newCol += 1;
-            break;
-        }
-        if (isAccessible(newRow, newCol))
-            return new Position(newRow, newCol);
-        return null;
+        int row = position.getRow(), col = position.getCol();
+        if ((getOpenDirections(row * nCols + col) & direction.bit()) == 0)
+            return null;
+        return new Position(row + direction.getRowStep(), col + direction.getColStep());
     }
 
     void register(Player player, int row, int col)
     {
         if (isOnBoard(row, col)) {
-            board[row][col].add(player);
             players.put(player.getId(), player);
+            occupancy.move(player.getId(), row * nCols + col);
         }
     }
 
@@ -258,21 +414,16 @@ public class Board
         return playerId;
     }
 
-    void deregister(Player player, int row, int col)
+    void deregister(Player player)
     {
-        if (isOnBoard(row, col)) {
-            board[row][col].remove(player);
-            players.remove(player.getId());
-        }
+        occupancy.move(player.getId(), Occupancy.NOWHERE);
+        players.remove(player.getId());
     }
 
     void deregisterAll()
     {
-        for (Map.Entry<Integer, Player> entry: players.entrySet()) {
-            Player player = entry.getValue();
-            Position position = player.getPosition();
-            deregister(player, position.getRow(), position.getCol());
-        }
+        for (Player player: players.values())
+            deregister(player);
     }
 
     Player getPlayer(int playerId)
@@ -280,16 +431,19 @@ public class Board
         return players.get(playerId);
     }
 
+    // position of registered player, or null
+    Position getPosition(Player player)
+    {
+        int index = occupancy.cellOf(player.getId());
+        if (index == Occupancy.NOWHERE)
+            return null;
+        return new Position(index / nCols, index % nCols);
+    }
+
     // move registered player from its current position to newRow, newCol
     void move(Player player, int newRow, int newCol)
     {
-        int row = player.getRow();
-        int col = player.getCol();
-        if (isOnBoard(newRow, newCol) && players.containsKey(player.getId())) {
-            board[row][col].remove(player);
-            board[newRow][newCol].add(player);
-            player.setRow(newRow);
-            player.setCol(newCol);
-        }
+        if (isOnBoard(newRow, newCol) && players.containsKey(player.getId()))
+            occupancy.move(player.getId(), newRow * nCols + newCol);
     }
 }
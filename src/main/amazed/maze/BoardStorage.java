@@ -0,0 +1,31 @@
+package amazed.maze;
+
+/**
+ * <code>BoardStorage</code> enumerates the ways in which a maze can
+ * hold the cells of its map in memory.
+ */
+
+public enum BoardStorage
+{
+    /**
+     * All cells are read from the map file when the maze is created,
+     * and kept on the heap.
+     */
+    IN_MEMORY,
+
+    /**
+     * The rows of the map file are indexed when the maze is created,
+     * and read in blocks when the search reaches them; a bounded
+     * number of blocks is kept on the heap. The map file must be
+     * plain text.
+     */
+    LAZY,
+
+    /**
+     * All cells are read from the map file when the maze is created,
+     * and kept outside of the heap, in the <code>OffHeapArena</code> of
+     * the maze, until the maze is closed. The map file must be plain
+     * text.
+     */
+    OFF_HEAP
+}
@@ -1,8 +1,7 @@
 package amazed.maze;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.awt.Image;
+import javax.swing.Icon;
 import java.awt.Graphics;
 import java.awt.Toolkit;
 
@@ -10,20 +9,27 @@ import java.awt.Toolkit;
 class Cell
 {
     private final Tile tile;
-    private final Queue<Player> players;
+    // in a printable board, a player shown on the cell, and the number
+    // of players on it; the players of a board are kept by Occupancy
+    private final Player shown;
+    private final int players;
 
-    private final Image image;
-    private final Character text;
     private final int id;
 
     Cell(Tile tile, int id)
     {
         this.tile = tile;
-        this.image = tile.getImage();
-        this.text = tile.getText();
         this.id = id;
+        this.shown = null;
+        this.players = 0;
+    }
 
-        this.players = new ConcurrentLinkedQueue<>();
+    private Cell(Cell cell, Player shown, int players)
+    {
+        this.tile = cell.tile;
+        this.id = cell.id;
+        this.shown = shown;
+        this.players = players;
     }
 
     Tile getTile()
@@ -38,18 +44,26 @@ class Cell
 
     Image getImage()
     {
-        if (players.isEmpty())
-            return image;
+        if (shown == null)
+            return tile.getImage();
         else
-            return players.element().getImage();
+            return shown.getImage();
+    }
+
+    Icon getIcon()
+    {
+        if (shown == null)
+            return tile.getIcon();
+        else
+            return shown.getIcon();
     }
 
     Character getText()
     {
-        if (players.isEmpty())
-            return text;
+        if (shown == null)
+            return tile.getText();
         else
-            return players.element().getText();
+            return shown.getText();
     }
 
     int getWidth()
@@ -87,21 +101,23 @@ class Cell
         return tile == Tile.HEART;
     }
 
-    void add(Player player)
+    // copy of the cell with one more player on it, for printing;
+    // the first player added is the one shown
+    Cell with(Player player)
     {
-        if (isAccessible())
-            players.add(player);
+        if (!isAccessible())
+            return this;
+        return new Cell(this, shown == null ? player : shown, players + 1);
     }
 
-    void remove(Player player)
+    // player shown on the cell, or null
+    Player getShownPlayer()
     {
-        if (isAccessible())
-            players.remove(player);
+        return shown;
     }
 
-    // return a copy of the players list
-    Player[] getPlayers()
+    int getPlayerCount()
     {
-        return players.toArray(new Player[0]);
+        return players;
     }
 }
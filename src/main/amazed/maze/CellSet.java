@@ -0,0 +1,125 @@
+package amazed.maze;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>CellSet</code> is a set of cell indexes (see
+ * {@link Maze#cellIndex(int)}) stored as a bitmap of one bit per cell,
+ * either on the heap or in an <code>OffHeapArena</code>.
+ * <p>
+ * Solvers use it for their visited sets. Method <code>add</code> sets
+ * the bit of a cell with a compare-and-set loop, so that it can be
+ * called by several threads at once; no method allocates.
+ */
+
+public class CellSet
+{
+    private static final VarHandle WORDS =
+        MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle BUFFER_WORDS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // exactly one of words and buffer is not null
+    private final long[] words;
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Creates an empty set of cells in <code>[0, capacity)</code> on the
+     * heap.
+     *
+     * @param capacity   the number of cells
+     */
+    public CellSet(int capacity)
+    {
+        this.capacity = capacity;
+        this.words = new long[(int) (((long) capacity + 63) >>> 6)];
+        this.buffer = null;
+    }
+
+    /**
+     * Creates an empty set of cells in <code>[0, capacity)</code> in an
+     * arena.
+     *
+     * @param capacity   the number of cells
+     * @param arena      the arena where the set is allocated
+     */
+    public CellSet(int capacity, OffHeapArena arena)
+    {
+        this.capacity = capacity;
+        this.words = null;
+        this.buffer = arena.allocate((((long) capacity + 63) >>> 6) << 3);
+    }
+
+    /**
+     * Returns the number of cells that can be in the set.
+     *
+     * @return   the capacity of the set
+     */
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of cells in the set.
+     *
+     * @return   the size of the set
+     */
+    public long size()
+    {
+        return size.get();
+    }
+
+    /**
+     * Tests whether a cell is in the set.
+     *
+     * @param index   a cell index in <code>[0, capacity())</code>
+     * @return        <code>true</code> if <code>index</code> is in the set;
+     *                <code>false</code> otherwise
+     */
+    public boolean contains(int index)
+    {
+        return (word(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * Adds a cell to the set. Thread safe.
+     *
+     * @param index   a cell index in <code>[0, capacity())</code>
+     * @return        <code>true</code> if <code>index</code> was not in the
+     *                set; <code>false</code> otherwise
+     */
+    public boolean add(int index)
+    {
+        int i = index >>> 6;
+        long bit = 1L << index;
+        long word;
+        do {
+            word = word(i);
+            if ((word & bit) != 0)
+                return false;
+        } while (!compareAndSet(i, word, word | bit));
+        size.incrementAndGet();
+        return true;
+    }
+
+    private long word(int i)
+    {
+        if (buffer == null)
+            return (long) WORDS.getOpaque(words, i);
+        return (long) BUFFER_WORDS.getOpaque(buffer, i << 3);
+    }
+
+    private boolean compareAndSet(int i, long expected, long value)
+    {
+        if (buffer == null)
+            return WORDS.compareAndSet(words, i, expected, value);
+        return BUFFER_WORDS.compareAndSet(buffer, i << 3, expected, value);
+    }
+}
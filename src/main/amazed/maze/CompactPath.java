@@ -0,0 +1,409 @@
+package amazed.maze;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.RandomAccess;
+
+/**
+ * <code>CompactPath</code> is a path in a <code>Maze</code>, stored as
+ * the cell index of its first node followed by the
+ * <code>Direction</code> of every move, in two bits per move packed
+ * in a <code>long[]</code>, as in <code>PackedDirections</code>.
+ * Every 32 moves, the cell index reached is also stored, so that any
+ * node of the path can be found by following at most 31 moves. A
+ * path thus takes about three bits per node, instead of the boxed
+ * identifier and list node that a <code>LinkedList&lt;Integer&gt;</code>
+ * spends on every node.
+ * <p>
+ * The nodes of a path can be iterated, as cell indexes or node
+ * identifiers, without boxing; method <code>asList</code> returns a
+ * read-only view of the node identifiers as a
+ * <code>List&lt;Integer&gt;</code>, which solvers return and which
+ * methods such as {@link Maze#isValidPath(List)} accept, and method
+ * <code>toList</code> copies them into a new list. Method
+ * <code>toString</code> encodes the path as its start and the runs of
+ * equal moves, such as <code>"0,0 3E 2S 1E"</code>.
+ * <p>
+ * Paths are built with a <code>Builder</code>, either forwards, from
+ * the first node, or backwards, from the last node, as solvers do
+ * when they follow predecessors from a goal.
+ */
+
+public class CompactPath
+{
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // moves per word of moves, and between checkpoints
+    private static final int MOVES_PER_WORD = 32;
+
+    private final Maze maze;
+    private final int start;
+    private final int length;
+    // move i is in bits 2 * (i % 32) of moves[i / 32]
+    private final long[] moves;
+    // checkpoints[w] is the cell index of node 32 * w
+    private final int[] checkpoints;
+
+    private CompactPath(Maze maze, int start, int length, long[] moves)
+    {
+        this.maze = maze;
+        this.start = start;
+        this.length = length;
+        this.moves = moves;
+        this.checkpoints = new int[length / MOVES_PER_WORD + 1];
+        int cell = start;
+        for (int i = 0; i <= length; i++) {
+            if (i % MOVES_PER_WORD == 0)
+                checkpoints[i / MOVES_PER_WORD] = cell;
+            if (i < length)
+                cell = maze.step(cell, move(i));
+        }
+    }
+
+    /**
+     * Returns the compact path of which a list is a view, if it is
+     * one.
+     *
+     * @param path   a list of node identifiers
+     * @return       the compact path such that <code>path</code> was
+     *               returned by its <code>asList</code>; <code>null</code>
+     *               if <code>path</code> is not such a view
+     */
+    public static CompactPath of(List<Integer> path)
+    {
+        return path instanceof IdList ? ((IdList) path).path() : null;
+    }
+
+    /**
+     * Returns the maze of this path.
+     *
+     * @return   the maze where the path lies
+     */
+    public Maze maze()
+    {
+        return maze;
+    }
+
+    /**
+     * Returns the cell index of the first node of this path.
+     *
+     * @return   the cell index where the path begins
+     */
+    public int start()
+    {
+        return start;
+    }
+
+    /**
+     * Returns the cell index of the last node of this path.
+     *
+     * @return   the cell index where the path ends
+     */
+    public int end()
+    {
+        return cellAt(length);
+    }
+
+    /**
+     * Returns the number of moves of this path, which is one less
+     * than its number of nodes.
+     *
+     * @return   the number of moves
+     */
+    public int length()
+    {
+        return length;
+    }
+
+    /**
+     * Returns a move of this path.
+     *
+     * @param i   the index of a move, in <code>[0, length())</code>
+     * @return    the direction of the move from node <code>i</code> to
+     *            node <code>i + 1</code>
+     */
+    public Direction move(int i)
+    {
+        if (i < 0 || i >= length)
+            throw new IndexOutOfBoundsException("move " + i + " of " + length);
+        return DIRECTIONS[(int) (moves[i / MOVES_PER_WORD] >>> (2 * (i % MOVES_PER_WORD))) & 3];
+    }
+
+    /**
+     * Returns a node of this path, following at most 31 moves.
+     *
+     * @param i   the index of a node, in <code>[0, length()]</code>
+     * @return    the cell index of node <code>i</code>
+     */
+    public int cellAt(int i)
+    {
+        if (i < 0 || i > length)
+            throw new IndexOutOfBoundsException("node " + i + " of " + (length + 1));
+        int cell = checkpoints[i / MOVES_PER_WORD];
+        for (int j = i - i % MOVES_PER_WORD; j < i; j++)
+            cell = maze.step(cell, move(j));
+        return cell;
+    }
+
+    /**
+     * Returns an iterator over the cell indexes of the nodes of this
+     * path, from the first to the last, that follows one move per
+     * node.
+     *
+     * @return   an iterator over the cell indexes of the path
+     */
+    public PrimitiveIterator.OfInt cells()
+    {
+        return new PrimitiveIterator.OfInt() {
+            private int next = 0;
+            private int cell = start;
+
+            @Override
+            public boolean hasNext() {
+                return next <= length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (next > length)
+                    throw new NoSuchElementException();
+                if (next > 0)
+                    cell = maze.step(cell, move(next - 1));
+                next += 1;
+                return cell;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over the identifiers of the nodes of this
+     * path, from the first to the last.
+     *
+     * @return   an iterator over the node identifiers of the path
+     */
+    public PrimitiveIterator.OfInt ids()
+    {
+        PrimitiveIterator.OfInt cells = cells();
+        return new PrimitiveIterator.OfInt() {
+            @Override
+            public boolean hasNext() {
+                return cells.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                return maze.cellId(cells.nextInt());
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only view of the identifiers of the nodes of
+     * this path. Identifiers are computed when they are read: no list
+     * of identifiers is stored.
+     *
+     * @return   the list of node identifiers of the path
+     */
+    public List<Integer> asList()
+    {
+        return new IdList();
+    }
+
+    /**
+     * Returns a new list of the identifiers of the nodes of this path.
+     *
+     * @return   a modifiable list of the node identifiers of the path
+     */
+    public List<Integer> toList()
+    {
+        List<Integer> ids = new ArrayList<>(length + 1);
+        for (PrimitiveIterator.OfInt it = ids(); it.hasNext(); )
+            ids.add(it.nextInt());
+        return ids;
+    }
+
+    /**
+     * Returns the run-length encoding of this path: the row and
+     * column of its first node, and, for every maximal run of equal
+     * moves, their number followed by the initial of their direction.
+     *
+     * @return   the encoding of the path, such as <code>"0,0 3E 2S 1E"</code>
+     */
+    @Override
+    public String toString()
+    {
+        int cols = maze.cols();
+        StringBuilder text = new StringBuilder();
+        text.append(start / cols).append(',').append(start % cols);
+        for (int i = 0; i < length; ) {
+            Direction direction = move(i);
+            int run = 1;
+            while (i + run < length && move(i + run) == direction)
+                run += 1;
+            text.append(' ').append(run).append(direction.name().charAt(0));
+            i += run;
+        }
+        return text.toString();
+    }
+
+    // the node identifiers of the path
+    private class IdList extends AbstractList<Integer> implements RandomAccess
+    {
+        CompactPath path()
+        {
+            return CompactPath.this;
+        }
+
+        @Override
+        public Integer get(int i)
+        {
+            if (i < 0 || i > length)
+                throw new IndexOutOfBoundsException("index " + i + " of " + (length + 1));
+            return maze.cellId(cellAt(i));
+        }
+
+        @Override
+        public int size()
+        {
+            return length + 1;
+        }
+
+        @Override
+        public Iterator<Integer> iterator()
+        {
+            return ids();
+        }
+    }
+
+    /**
+     * <code>Builder</code> builds a <code>CompactPath</code> one move at
+     * a time. A forward builder starts from the first node of the path
+     * and adds the moves in order; a backward builder starts from the
+     * last node, and adds the moves from every node to the previous
+     * one, in reverse order.
+     */
+    public static class Builder
+    {
+        private final Maze maze;
+        private final boolean backward;
+        private long[] moves = new long[1];
+        private int length;
+        // the cell the builder started from
+        private final int origin;
+        // the cell reached by the moves added so far
+        private int current;
+
+        private Builder(Maze maze, int cell, boolean backward)
+        {
+            this.maze = maze;
+            this.origin = cell;
+            this.current = cell;
+            this.backward = backward;
+        }
+
+        /**
+         * Creates a builder of a path that begins with a given node.
+         *
+         * @param maze    the maze of the path
+         * @param start   the cell index of the first node of the path
+         * @return        a builder adding moves after <code>start</code>
+         */
+        public static Builder from(Maze maze, int start)
+        {
+            return new Builder(maze, start, false);
+        }
+
+        /**
+         * Creates a builder of a path that ends with a given node.
+         *
+         * @param maze   the maze of the path
+         * @param end    the cell index of the last node of the path
+         * @return       a builder adding moves before <code>end</code>
+         */
+        public static Builder to(Maze maze, int end)
+        {
+            return new Builder(maze, end, true);
+        }
+
+        /**
+         * Returns the cell index reached by the moves added so far:
+         * the last node of a forward path, or the first node of a
+         * backward path.
+         *
+         * @return   the cell index of the current end of the path
+         */
+        public int current()
+        {
+            return current;
+        }
+
+        /**
+         * Extends the path by one move: after its last node, for a
+         * forward builder, or before its first node, for a backward
+         * builder.
+         *
+         * @param direction   the direction from the current end of the
+         *                    path to the new node
+         * @return            this builder
+         * @throws IllegalArgumentException   if the move leaves the maze
+         */
+        public Builder add(Direction direction)
+        {
+            int next = maze.step(current, direction);
+            if (next < 0)
+                throw new IllegalArgumentException("Move " + direction + " leaves the maze");
+            if (length == moves.length * MOVES_PER_WORD)
+                moves = Arrays.copyOf(moves, 2 * moves.length);
+            moves[length / MOVES_PER_WORD] |=
+                (long) direction.ordinal() << (2 * (length % MOVES_PER_WORD));
+            length += 1;
+            current = next;
+            return this;
+        }
+
+        /**
+         * Extends the path with a node adjacent to its current end, as
+         * in <code>add</code>.
+         *
+         * @param cell   the cell index of the new node
+         * @return       this builder
+         * @throws IllegalArgumentException   if <code>cell</code> is not
+         *                                    adjacent to the current end
+         */
+        public Builder add(int cell)
+        {
+            Direction direction = maze.direction(current, cell);
+            if (direction == null)
+                throw new IllegalArgumentException("Cell " + cell + " is not adjacent to " + current);
+            return add(direction);
+        }
+
+        /**
+         * Returns the path built so far.
+         *
+         * @return   a path with the moves added to this builder
+         */
+        public CompactPath build()
+        {
+            int words = length / MOVES_PER_WORD + 1;
+            long[] packed = new long[words];
+            if (!backward)
+                System.arraycopy(moves, 0, packed, 0, Math.min(words, moves.length));
+            else {
+                // move i is the opposite of added move length - 1 - i:
+                // flipping the low bit of a direction gives its opposite
+                for (int i = 0; i < length; i++) {
+                    int j = length - 1 - i;
+                    long added = (moves[j / MOVES_PER_WORD] >>> (2 * (j % MOVES_PER_WORD))) & 3;
+                    packed[i / MOVES_PER_WORD] |= (added ^ 1) << (2 * (i % MOVES_PER_WORD));
+                }
+            }
+            return new CompactPath(maze, backward ? current : origin, length, packed);
+        }
+    }
+}
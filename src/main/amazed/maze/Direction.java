@@ -1,10 +1,56 @@
 package amazed.maze;
 
 
-enum Direction
+public enum Direction
 {
-    NORTH,
-    SOUTH,
-    WEST,
-    EAST;
+    NORTH(-1, 0),
+    SOUTH(1, 0),
+    WEST(0, -1),
+    EAST(0, 1);
+
+    private static final Direction[] DIRECTIONS = values();
+
+    private final int rowStep;
+    private final int colStep;
+
+    Direction(int rowStep, int colStep)
+    {
+        this.rowStep = rowStep;
+        this.colStep = colStep;
+    }
+
+    // change of row when moving one cell in this direction
+    int getRowStep()
+    {
+        return rowStep;
+    }
+
+    // change of column when moving one cell in this direction
+    int getColStep()
+    {
+        return colStep;
+    }
+
+    /**
+     * Returns the bit representing this direction in a mask of
+     * directions, such as the one returned by
+     * {@link Maze#openDirections(int)}.
+     *
+     * @return   <code>1 &lt;&lt; ordinal()</code>
+     */
+    public int bit()
+    {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Returns the direction that leads back from where a move in
+     * this direction ends.
+     *
+     * @return   the direction opposite to this one
+     */
+    public Direction opposite()
+    {
+        return DIRECTIONS[ordinal() ^ 1];
+    }
 }
@@ -0,0 +1,221 @@
+package amazed.maze;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>DistanceField</code> stores, for every cell of a maze, the
+ * length of the shortest path from that cell to the nearest goal.
+ * <p>
+ * The field is computed by a breadth-first search that starts from
+ * all goals at once and proceeds one level at a time. Each level is
+ * expanded in parallel by fork/join tasks, which claim unreached
+ * cells with a compare-and-set on the distance array. Once computed,
+ * the distance from a cell and the next step towards the nearest goal
+ * are answered in constant time.
+ * <p>
+ * A distance field can be written to a file and read back, so that
+ * it need not be recomputed every time a map is loaded; the file
+ * records the content hash of the maze, and is rejected if it does
+ * not match the maze it is read for.
+ */
+
+public class DistanceField
+{
+    /**
+     * Distance of the cells from which no goal can be reached.
+     */
+    public static final int UNREACHABLE = -1;
+
+    // number of frontier cells expanded sequentially by a single task
+    private static final int CHUNK = 1 << 12;
+
+    private static final int MAGIC = 0x414d4446; // "AMDF"
+
+    private static final VarHandle DISTANCES =
+        MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Board board;
+    private final int[] distances;
+
+    private DistanceField(Board board, int[] distances)
+    {
+        this.board = board;
+        this.distances = distances;
+    }
+
+    // compute the distance field of board
+    static DistanceField compute(Board board)
+    {
+        int cells = board.getRows() * board.getCols();
+        int[] distances = new int[cells];
+        Arrays.fill(distances, UNREACHABLE);
+        int[] frontier = new int[cells];
+        int size = 0;
+        for (int index: board.getGoals()) {
+            distances[index] = 0;
+            frontier[size++] = index;
+        }
+        int[] next = new int[cells];
+        AtomicInteger nextSize = new AtomicInteger();
+        for (int level = 1; size > 0; level++) {
+            nextSize.set(0);
+            new LevelTask(board, distances, frontier, 0, size, next, nextSize, level).invoke();
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            size = nextSize.get();
+        }
+        return new DistanceField(board, distances);
+    }
+
+    // read the distance field of board from file, or return null if
+    // file does not contain a distance field of board
+    static DistanceField read(File file, Board board)
+    throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC
+                || in.readInt() != board.getRows()
+                || in.readInt() != board.getCols()
+                || in.readLong() != board.getContentHash())
+                return null;
+            int[] distances = new int[board.getRows() * board.getCols()];
+            for (int i = 0; i < distances.length; i++)
+                distances[i] = in.readInt();
+            return new DistanceField(board, distances);
+        }
+    }
+
+    /**
+     * Writes this distance field to a file, from where it can be read
+     * back for the same map with {@link Maze#loadDistanceField(File)}.
+     *
+     * @param file   the file to write
+     * @throws IOException   if the file cannot be written
+     */
+    public void write(File file)
+    throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(board.getRows());
+            out.writeInt(board.getCols());
+            out.writeLong(board.getContentHash());
+            for (int distance: distances)
+                out.writeInt(distance);
+        }
+    }
+
+    /**
+     * Returns the length of a shortest path from a cell to the
+     * nearest goal.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        the number of steps from <code>index</code> to the
+     *                nearest goal; {@link #UNREACHABLE} if no goal can be
+     *                reached from <code>index</code>
+     */
+    public int distance(int index)
+    {
+        return distances[index];
+    }
+
+    /**
+     * Returns the first step of a shortest path from a cell to the
+     * nearest goal.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        the cell index adjacent to <code>index</code> that is
+     *                one step closer to a goal; <code>index</code> itself
+     *                if it is a goal; <code>-1</code> if no goal can be
+     *                reached from <code>index</code>
+     */
+    public int nextStep(int index)
+    {
+        int distance = distances[index];
+        if (distance <= 0)
+            return distance == 0 ? index : -1;
+        int cols = board.getCols();
+        int open = board.getOpenDirections(index);
+        for (Direction direction: DIRECTIONS) {
+            if ((open & direction.bit()) != 0) {
+                int nb = index + direction.getRowStep() * cols + direction.getColStep();
+                if (distances[nb] == distance - 1)
+                    return nb;
+            }
+        }
+        return -1;
+    }
+
+    // expands frontier[from, to) into next, at distance level from the goals
+    private static class LevelTask extends RecursiveAction
+    {
+        private final Board board;
+        private final int[] distances;
+        private final int[] frontier;
+        private final int from;
+        private final int to;
+        private final int[] next;
+        private final AtomicInteger nextSize;
+        private final int level;
+
+        LevelTask(Board board, int[] distances, int[] frontier, int from, int to,
+                  int[] next, AtomicInteger nextSize, int level)
+        {
+            this.board = board;
+            this.distances = distances;
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.next = next;
+            this.nextSize = nextSize;
+            this.level = level;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LevelTask(board, distances, frontier, from, middle,
+                                        next, nextSize, level),
+                          new LevelTask(board, distances, frontier, middle, to,
+                                        next, nextSize, level));
+                return;
+            }
+            int cols = board.getCols();
+            int[] claimed = new int[4 * (to - from)];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int index = frontier[i];
+                int open = board.getOpenDirections(index);
+                for (Direction direction: DIRECTIONS) {
+                    if ((open & direction.bit()) == 0)
+                        continue;
+                    int nb = index + direction.getRowStep() * cols + direction.getColStep();
+                    if (distances[nb] == UNREACHABLE
+                        && DISTANCES.compareAndSet(distances, nb, UNREACHABLE, level))
+                        claimed[count++] = nb;
+                }
+            }
+            int offset = nextSize.getAndAdd(count);
+            System.arraycopy(claimed, 0, next, offset, count);
+        }
+    }
+}
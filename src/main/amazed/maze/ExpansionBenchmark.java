@@ -0,0 +1,91 @@
+package amazed.maze;
+
+/**
+ * <code>ExpansionBenchmark</code> measures the cost of expanding the
+ * neighbors of a cell, comparing the original expansion &mdash; a
+ * <code>switch</code> on the direction, bounds and accessibility
+ * checks, and a new <code>Position</code> per direction &mdash; with
+ * a lookup in the board's precomputed mask of open directions.
+ * <p>
+ * Usage: <code>java amazed.maze.ExpansionBenchmark MAP [ROUNDS]</code>
+ */
+
+public class ExpansionBenchmark
+{
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    public static void main(String[] args)
+    {
+        if (args.length < 1) {
+            System.out.println("usage: java amazed.maze.ExpansionBenchmark MAP [ROUNDS]");
+            System.exit(0);
+        }
+        int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 200;
+        Board board = new Board(args[0], 0);
+        long expansions = (long) board.getRows() * board.getCols() * DIRECTIONS.length;
+        long sink = 0;
+        // warm up both variants before measuring
+        for (int i = 0; i < rounds; i++)
+            sink += expandBySwitch(board) + expandByMask(board);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+            sink += expandBySwitch(board);
+        long switchTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+            sink += expandByMask(board);
+        long maskTime = System.nanoTime() - start;
+        System.out.printf("switch and bounds checks: %.2f ns per expansion%n",
+                          (double) switchTime / (rounds * expansions));
+        System.out.printf("open-direction mask:      %.2f ns per expansion%n",
+                          (double) maskTime / (rounds * expansions));
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    // the expansion Board.move performed before open-direction masks
+    private static long expandBySwitch(Board board)
+    {
+        long sum = 0;
+        for (int row = 0; row < board.getRows(); row++) {
+            for (int col = 0; col < board.getCols(); col++) {
+                for (Direction direction: DIRECTIONS) {
+                    int newRow = row, newCol = col;
+                    switch (direction) {
+                    case NORTH:
+                        newRow -= 1;
+                        break;
+                    case SOUTH:
+                        newRow += 1;
+                        break;
+                    case WEST:
+                        newCol -= 1;
+                        break;
+                    case EAST:
+                        newCol += 1;
+                        break;
+                    }
+                    Position position = board.isAccessible(newRow, newCol)
+                        ? new Position(newRow, newCol) : null;
+                    if (position != null)
+                        sum += position.getRow() * board.getCols() + position.getCol();
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static long expandByMask(Board board)
+    {
+        long sum = 0;
+        int cols = board.getCols();
+        int cells = board.getRows() * cols;
+        for (int index = 0; index < cells; index++) {
+            int open = board.getOpenDirections(index);
+            for (Direction direction: DIRECTIONS) {
+                if ((open & direction.bit()) != 0)
+                    sum += index + direction.getRowStep() * cols + direction.getColStep();
+            }
+        }
+        return sum;
+    }
+}
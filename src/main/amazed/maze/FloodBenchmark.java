@@ -0,0 +1,88 @@
+package amazed.maze;
+
+import java.util.Arrays;
+
+/**
+ * <code>FloodBenchmark</code> compares <code>BitboardFlood</code>
+ * with a breadth-first search that expands one cell at a time, on
+ * the two queries a flood answers from the start of a map: whether a
+ * goal is reachable, and the distance to the nearest goal. It reports
+ * the answers of both, which must agree, and the average wall time of
+ * each query.
+ * <p>
+ * Usage: <code>java amazed.maze.FloodBenchmark MAP [ROUNDS]</code>
+ */
+
+public class FloodBenchmark
+{
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    public static void main(String[] args)
+    {
+        if (args.length < 1) {
+            System.out.println("usage: java amazed.maze.FloodBenchmark MAP [ROUNDS]");
+            System.exit(0);
+        }
+        int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 20;
+        Maze maze = new Maze(args[0]);
+        maze.setDelay(-1);
+        Board board = maze.getBoard();
+        int start = maze.cellIndex(maze.start());
+        long build = System.nanoTime();
+        BitboardFlood flood = new BitboardFlood(maze);
+        System.out.printf("bitboards built in %.3f ms%n", (System.nanoTime() - build) / 1e6);
+
+        int distance = 0;
+        boolean reachable = false;
+        long perCell = 0, bitReach = 0, bitDistance = 0;
+        // the first round is a warm-up
+        for (int i = 0; i <= rounds; i++) {
+            long t0 = System.nanoTime();
+            distance = perCellDistance(board, start);
+            long t1 = System.nanoTime();
+            reachable = flood.isGoalReachable(start);
+            long t2 = System.nanoTime();
+            int bitboardDistance = flood.distanceToGoal(start);
+            long t3 = System.nanoTime();
+            if (reachable != (distance >= 0) || bitboardDistance != distance)
+                throw new IllegalStateException("bitboard flood disagrees with per-cell search");
+            if (i > 0) {
+                perCell += t1 - t0;
+                bitReach += t2 - t1;
+                bitDistance += t3 - t2;
+            }
+        }
+        System.out.printf("goal reachable: %b, distance %d%n", reachable, distance);
+        System.out.printf("%-20s %10.3f ms per query%n", "per-cell search", perCell / 1e6 / rounds);
+        System.out.printf("%-20s %10.3f ms per query%n", "bitboard reachable", bitReach / 1e6 / rounds);
+        System.out.printf("%-20s %10.3f ms per query%n", "bitboard distance", bitDistance / 1e6 / rounds);
+    }
+
+    // breadth-first search from start, one cell at a time
+    private static int perCellDistance(Board board, int start)
+    {
+        int cols = board.getCols();
+        int[] distances = new int[board.getRows() * cols];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[distances.length];
+        int head = 0, tail = 0;
+        distances[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int index = queue[head++];
+            if (board.isHeart(index))
+                return distances[index];
+            int open = board.getOpenDirections(index);
+            for (Direction direction: DIRECTIONS) {
+                if ((open & direction.bit()) == 0)
+                    continue;
+                int nb = index + direction.getRowStep() * cols + direction.getColStep();
+                if (distances[nb] < 0) {
+                    distances[nb] = distances[index] + 1;
+                    queue[tail++] = nb;
+                }
+            }
+        }
+        return -1;
+    }
+}
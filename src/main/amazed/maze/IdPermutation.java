@@ -0,0 +1,65 @@
+package amazed.maze;
+
+/**
+ * <code>IdPermutation</code> is a pseudo-random permutation of the
+ * integers in <code>[0, size)</code> that is computed, in both
+ * directions, without storing any table.
+ * <p>
+ * The permutation is a four-round Feistel network on the smallest
+ * domain of <code>2h</code> bits that contains <code>[0, size)</code>,
+ * with round keys derived from a seed; values that the network maps
+ * outside <code>[0, size)</code> are mapped again until they fall
+ * inside (cycle walking), which takes fewer than four rounds of the
+ * network on average.
+ */
+
+class IdPermutation
+{
+    private static final int ROUNDS = 4;
+
+    private final long size;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] keys = new long[ROUNDS];
+
+    // permutation of [0, size) determined by seed
+    IdPermutation(long size, long seed)
+    {
+        this.size = size;
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1));
+        halfBits = Math.max(1, (bits + 1) / 2);
+        halfMask = (1L << halfBits) - 1;
+        for (int round = 0; round < ROUNDS; round++)
+            keys[round] = Board.mix(seed + (round + 1) * 0x9e3779b97f4a7c15L);
+    }
+
+    // image of x in [0, size)
+    long forward(long x)
+    {
+        do {
+            long left = x >>> halfBits, right = x & halfMask;
+            for (int round = 0; round < ROUNDS; round++) {
+                long next = left ^ (Board.mix(right ^ keys[round]) & halfMask);
+                left = right;
+                right = next;
+            }
+            x = (left << halfBits) | right;
+        } while (x >= size);
+        return x;
+    }
+
+    // preimage of y in [0, size)
+    long backward(long y)
+    {
+        do {
+            long left = y >>> halfBits, right = y & halfMask;
+            for (int round = ROUNDS - 1; round >= 0; round--) {
+                long previous = right ^ (Board.mix(left ^ keys[round]) & halfMask);
+                right = left;
+                left = previous;
+            }
+            y = (left << halfBits) | right;
+        } while (y >= size);
+        return y;
+    }
+}
@@ -1,42 +1,156 @@
 package amazed.maze;
 
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Image;
-import javax.swing.ImageIcon;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import javax.imageio.ImageIO;
+import javax.swing.Icon;
 import java.io.File;
+import java.io.IOException;
 
 
+// sprites of tiles and players, read from the PNG files in directory
+// images the first time one of them is requested, so that solving a
+// maze without displaying it never initializes AWT; the files are
+// decoded in parallel and packed into a single atlas image, and every
+// sprite is drawn as a region of the atlas
 class ImageFactory
 {
     private static String imgDir = "images";
 
-    private static Hashtable<String, Image> images = initializeImages();
-    private static Hashtable<String, Character> characters = initializeCharacters();
+    // icons already requested: sprite name --> icon
+    private static final Map<String, Icon> icons = new ConcurrentHashMap<>();
 
+    // the atlas, loaded on first use by the class loader
+    private static class Atlas
+    {
+        private static final Atlas INSTANCE = new Atlas(new File(imgDir).listFiles());
+
+        private final BufferedImage image;
+        // sprite name --> region of image; read-only after construction
+        private final Map<String, Rectangle> regions = new HashMap<>();
+        // sprite name --> view of the region, sharing the atlas pixels
+        private final Map<String, Image> sprites = new HashMap<>();
+
+        private Atlas(File[] files)
+        {
+            if (files == null)
+                files = new File[0];
+            BufferedImage[] loaded = new BufferedImage[files.length];
+            ForkJoinPool.commonPool().invoke(new LoadTask(files, loaded, 0, files.length));
+            // pack the sprites side by side in one row
+            int width = 0, height = 0;
+            for (int i = 0; i < files.length; i++) {
+                if (loaded[i] != null) {
+                    regions.put(graphicName(files[i]),
+                                new Rectangle(width, 0, loaded[i].getWidth(), loaded[i].getHeight()));
+                    width += loaded[i].getWidth();
+                    height = Math.max(height, loaded[i].getHeight());
+                }
+            }
+            image = new BufferedImage(Math.max(width, 1), Math.max(height, 1),
+                                      BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            for (int i = 0; i < files.length; i++) {
+                if (loaded[i] != null) {
+                    Rectangle region = regions.get(graphicName(files[i]));
+                    g.drawImage(loaded[i], region.x, region.y, null);
+                }
+            }
+            g.dispose();
+            for (Map.Entry<String, Rectangle> entry: regions.entrySet()) {
+                Rectangle r = entry.getValue();
+                sprites.put(entry.getKey(), image.getSubimage(r.x, r.y, r.width, r.height));
+            }
+        }
+    }
+
+    // decode the PNG files in [from, to) into loaded, in parallel
+    private static class LoadTask extends RecursiveAction
+    {
+        private final File[] files;
+        private final BufferedImage[] loaded;
+        private final int from, to;
+
+        LoadTask(File[] files, BufferedImage[] loaded, int from, int to)
+        {
+            this.files = files;
+            this.loaded = loaded;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LoadTask(files, loaded, from, middle),
+                          new LoadTask(files, loaded, middle, to));
+            } else if (to > from && graphicName(files[from]) != null) {
+                try {
+                    loaded[from] = ImageIO.read(files[from]);
+                } catch (IOException e) {
+                    System.err.println("Warning: cannot read image " + files[from]);
+                }
+            }
+        }
+    }
+
+    // sprite name, or null if there is no such sprite
     static Image getImage(String name)
     {
-        return images.get(name);
+        return Atlas.INSTANCE.sprites.get(name);
     }
 
-    static Character getText(String name)
+    // icon drawing sprite name, shared by all its users; null if there
+    // is no such sprite
+    static Icon getIcon(String name)
     {
-        return characters.get(name);
+        Rectangle region = Atlas.INSTANCE.regions.get(name);
+        if (region == null)
+            return null;
+        return icons.computeIfAbsent(name, n -> new SpriteIcon(region));
     }
 
-    private static Hashtable<String, Image> initializeImages()
+    // icon copying a region of the atlas
+    private static class SpriteIcon implements Icon
     {
-        Hashtable<String, Image> images = new Hashtable<>();
-        File dir = new File(imgDir);
-        File[] dirFiles = dir.listFiles();
-        if (dirFiles != null) {
-            for (File f : dirFiles) {
-                String name = graphicName(f);
-                if (name != null) {
-                    images.put(name, new ImageIcon(f.getPath()).getImage());
-                }
-            }
+        private final Rectangle region;
+
+        SpriteIcon(Rectangle region)
+        {
+            this.region = region;
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y)
+        {
+            g.drawImage(Atlas.INSTANCE.image,
+                        x, y, x + region.width, y + region.height,
+                        region.x, region.y, region.x + region.width, region.y + region.height,
+                        c);
+        }
+
+        @Override
+        public int getIconWidth()
+        {
+            return region.width;
+        }
+
+        @Override
+        public int getIconHeight()
+        {
+            return region.height;
         }
-        return images;
     }
 
     private static String graphicName(File f)
@@ -51,33 +165,4 @@ class ImageFactory
             return null;
         }
     }
-
-    private static Hashtable<String, Character> initializeCharacters()
-    {
-        Hashtable<String, Character> characters = new Hashtable<>();
-        for (String name : images.keySet()) {
-            Character ch;
-            switch (name) {
-            case "empty":
-                ch = '.';
-                break;
-            case "brick":
-                ch = '*';
-                break;
-            case "solid":
-                ch = '#';
-                break;
-            case "marked":
-                ch = '+';
-                break;
-            case "heart":
-                ch = 'v';
-                break;
-            default:
-                ch = '?';
-            }
-            characters.put(name, ch);
-        }
-        return characters;
-    }
 }
@@ -0,0 +1,49 @@
+package amazed.maze;
+
+import java.util.List;
+
+import amazed.solver.JumpPointSolver;
+import amazed.solver.SequentialSolver;
+
+/**
+ * <code>JumpPointBenchmark</code> compares <code>JumpPointSolver</code>
+ * with <code>SequentialSolver</code> on a map, reporting the number
+ * of nodes each expands, the length of the path each finds, and the
+ * average wall time of a search.
+ * <p>
+ * Usage: <code>java amazed.maze.JumpPointBenchmark MAP [ROUNDS]</code>
+ */
+
+public class JumpPointBenchmark
+{
+    public static void main(String[] args)
+    {
+        if (args.length < 1) {
+            System.out.println("usage: java amazed.maze.JumpPointBenchmark MAP [ROUNDS]");
+            System.exit(0);
+        }
+        int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 20;
+        Maze maze = new Maze(args[0]);
+        maze.setDelay(-1);
+        report("sequential", maze, rounds, false);
+        report("jps", maze, rounds, true);
+    }
+
+    private static void report(String name, Maze maze, int rounds, boolean jumpPoint)
+    {
+        SequentialSolver solver = null;
+        List<Integer> path = null;
+        long total = 0;
+        // the first round is a warm-up
+        for (int i = 0; i <= rounds; i++) {
+            long start = System.nanoTime();
+            solver = jumpPoint ? new JumpPointSolver(maze) : new SequentialSolver(maze);
+            path = solver.compute();
+            if (i > 0)
+                total += System.nanoTime() - start;
+        }
+        System.out.printf("%-10s expanded %8d nodes, path length %6s, %8.3f ms per search%n",
+                          name, solver.expanded(), path == null ? "none" : path.size(),
+                          total / 1e6 / rounds);
+    }
+}
@@ -0,0 +1,238 @@
+package amazed.maze;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>LatencyHistogram</code> counts latencies, in nanoseconds, in
+ * the style of an HdrHistogram: every power of two is split into
+ * <code>2^SUB_BUCKET_BITS</code> linear sub-buckets, so that a latency
+ * is reported with a relative error below <code>1 / 2^SUB_BUCKET_BITS</code>,
+ * whatever its magnitude.
+ * <p>
+ * Recording a latency increments a counter without locking, so that
+ * many threads can record into the same histogram at little cost.
+ * Percentiles read while latencies are being recorded reflect some of
+ * the concurrent recordings, but never latencies that were not
+ * recorded.
+ */
+
+public class LatencyHistogram
+{
+    // latencies in [0, 2^(SUB_BUCKET_BITS + 1)) are counted exactly
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos   the latency, in nanoseconds; negative latencies
+     *                are recorded as 0
+     */
+    public void record(long nanos)
+    {
+        nanos = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(nanos));
+        total.add(nanos);
+        if (nanos > max.get())
+            max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Records the latency of an operation that started at a given
+     * time.
+     *
+     * @param startNanos   the value of <code>System.nanoTime()</code>
+     *                     when the operation started
+     */
+    public void recordSince(long startNanos)
+    {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return   the number of latencies recorded so far
+     */
+    public long count()
+    {
+        long count = 0;
+        for (int b = 0; b < BUCKETS; b++)
+            count += counts.get(b);
+        return count;
+    }
+
+    /**
+     * Returns the largest recorded latency.
+     *
+     * @return   the largest latency recorded so far, in nanoseconds;
+     *           0 if none was recorded
+     */
+    public long max()
+    {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded latencies.
+     *
+     * @return   the mean of the latencies recorded so far, in
+     *           nanoseconds; 0 if none was recorded
+     */
+    public double mean()
+    {
+        long count = count();
+        return count == 0 ? 0 : total.doubleValue() / count;
+    }
+
+    /**
+     * Returns the latency that is not exceeded by a fraction of the
+     * recorded latencies.
+     *
+     * @param fraction   a number in <code>[0, 1]</code>
+     * @return           the smallest latency, up to the precision of the
+     *                   histogram, such that a fraction at least
+     *                   <code>fraction</code> of the recorded latencies are
+     *                   not larger; 0 if no latency was recorded
+     */
+    public long percentile(double fraction)
+    {
+        return percentile(snapshot(), fraction);
+    }
+
+    /**
+     * Returns a one-line summary of the recorded latencies: their
+     * count, median, 90th, 99th and 99.9th percentiles, and maximum,
+     * in microseconds.
+     *
+     * @return   the summary of the recorded latencies
+     */
+    public String summary()
+    {
+        long[] snapshot = snapshot();
+        return String.format(Locale.ROOT,
+                             "count=%d p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                             sum(snapshot), percentile(snapshot, 0.5) / 1e3,
+                             percentile(snapshot, 0.9) / 1e3, percentile(snapshot, 0.99) / 1e3,
+                             percentile(snapshot, 0.999) / 1e3, max.get() / 1e3);
+    }
+
+    /**
+     * Writes the distribution of the recorded latencies, in
+     * microseconds, in the percentile format of HdrHistogram, which
+     * its plotting tools read: one line per percentile, with ticks
+     * that get denser towards the tail of the distribution.
+     *
+     * @param out   where the distribution is written
+     */
+    public void write(PrintWriter out)
+    {
+        long[] snapshot = snapshot();
+        long count = sum(snapshot);
+        out.format(Locale.ROOT, "%12s %14s %10s %14s%n%n",
+                   "Value", "Percentile", "TotalCount", "1/(1-Percentile)");
+        // 5 ticks every time the distance to 100% halves
+        double fraction = 0;
+        for (long seen = 0; count > 0 && seen < count; ) {
+            long value = percentile(snapshot, fraction);
+            seen = countUpTo(snapshot, value);
+            out.format(Locale.ROOT, "%12.3f %2.12f %10d %14.2f%n",
+                       value / 1e3, fraction, seen, 1 / (1 - fraction));
+            double halvings = Math.floor(Math.log(1 / (1 - fraction)) / Math.log(2)) + 1;
+            fraction += 1 / (Math.pow(2, halvings) * 5);
+        }
+        out.format(Locale.ROOT, "%12.3f %2.12f %10d %14s%n",
+                   max.get() / 1e3, 1.0, count, "Infinity");
+        out.format(Locale.ROOT, "#[Mean    = %12.3f, StdDeviation   = %12.3f]%n",
+                   mean() / 1e3, deviation(snapshot) / 1e3);
+        out.format(Locale.ROOT, "#[Max     = %12.3f, Total count    = %12d]%n",
+                   max.get() / 1e3, count);
+        out.format(Locale.ROOT, "#[Buckets = %12d, SubBuckets     = %12d]%n",
+                   64 - SUB_BUCKET_BITS, SUB_BUCKETS);
+    }
+
+    // index of the bucket counting latency nanos
+    private static int bucket(long nanos)
+    {
+        int shift = Math.max(63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS, 0);
+        if (nanos < 2 * SUB_BUCKETS)
+            return (int) nanos;
+        return (shift + 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+    }
+
+    // smallest latency counted by bucket b
+    private static long lowest(int b)
+    {
+        if (b < 2 * SUB_BUCKETS)
+            return b;
+        int shift = b / SUB_BUCKETS - 1;
+        return (long) (b - shift * SUB_BUCKETS) << shift;
+    }
+
+    // largest latency counted by bucket b
+    private static long highest(int b)
+    {
+        return b + 1 < BUCKETS ? lowest(b + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    private long[] snapshot()
+    {
+        long[] snapshot = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++)
+            snapshot[b] = counts.get(b);
+        return snapshot;
+    }
+
+    private static long sum(long[] snapshot)
+    {
+        long sum = 0;
+        for (long count: snapshot)
+            sum += count;
+        return sum;
+    }
+
+    private long percentile(long[] snapshot, double fraction)
+    {
+        long rank = Math.max((long) Math.ceil(fraction * sum(snapshot)), 1);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += snapshot[b];
+            if (seen >= rank)
+                return Math.min(highest(b), max.get());
+        }
+        return 0;
+    }
+
+    // number of latencies in the buckets up to the one counting value
+    private static long countUpTo(long[] snapshot, long value)
+    {
+        long seen = 0;
+        for (int b = 0; b <= bucket(value); b++)
+            seen += snapshot[b];
+        return seen;
+    }
+
+    private double deviation(long[] snapshot)
+    {
+        long count = sum(snapshot);
+        if (count == 0)
+            return 0;
+        double mean = mean(), squares = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            if (snapshot[b] > 0) {
+                double delta = (lowest(b) + highest(b)) / 2.0 - mean;
+                squares += delta * delta * snapshot[b];
+            }
+        }
+        return Math.sqrt(squares / count);
+    }
+}
@@ -0,0 +1,324 @@
+package amazed.maze;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <code>LazyBoard</code> is a board whose cells are read from the map
+ * file only when they are first needed.
+ * <p>
+ * Creating a lazy board scans the map file once, without building any
+ * cell, to find the dimensions of the board and the offset in the file
+ * where every row begins. The rows are grouped in blocks of
+ * consecutive rows; a block is decoded from the file the first time
+ * one of its cells is accessed, and is kept in a cache holding a
+ * bounded number of blocks. When the cache is full, the least recently
+ * used block is evicted, unless one of its cells has been changed (by
+ * <code>toggleBrick</code> or <code>markPath</code>), in which case the
+ * block stays in memory. The map file must be plain text: neither
+ * compressed nor run-length encoded.
+ * <p>
+ * The goals are found by the scan. The masks of open directions are
+ * computed from the neighbors of a cell when they are requested, and
+ * the content hash of the board when it is first requested, which
+ * reads all blocks.
+ */
+
+class LazyBoard extends Board
+{
+    // default number of rows in a block
+    static final int DEFAULT_BLOCK_ROWS = 64;
+    // default number of blocks in the cache
+    static final int DEFAULT_MAX_BLOCKS = 256;
+
+    private static final Pattern HEADER = Pattern.compile("^\\$(rle)?(\\d+),(\\d+)$");
+    private static final Tile[] MAP_TILES = { Tile.EMPTY, Tile.SOLID, Tile.BRICK, Tile.HEART };
+
+    private final String filename;
+    // offset in the file of the line where each row begins, and
+    // the length of the file at the end
+    private final long[] rowOffsets;
+    private final int blockRows;
+    private final int maxBlocks;
+
+    // decoded blocks, or null if not in the cache
+    private final Block[] blocks;
+    private int cached = 0;
+    private long clock = 0;
+    private boolean hashed = false;
+
+    // consecutive rows of the board
+    private static class Block
+    {
+        private final Cell[][] cells;
+        // time of the last access, for eviction
+        private long lastUse;
+        // changed blocks are never evicted; set and read with the lock
+        // of the board held
+        private boolean changed = false;
+
+        Block(Cell[][] cells)
+        {
+            this.cells = cells;
+        }
+    }
+
+    // lazy board from map filename, caching maxBlocks blocks of blockRows rows,
+    // with node ids determined by idSeed
+    LazyBoard(String filename, int blockRows, int maxBlocks, long idSeed)
+    throws IOException
+    {
+        this(filename, scan(filename), blockRows, maxBlocks, idSeed);
+    }
+
+    private LazyBoard(String filename, MapIndex index, int blockRows, int maxBlocks, long idSeed)
+    {
+        super((int) index.offsets[0], (int) index.offsets[1], null, idSeed);
+        if (blockRows <= 0 || maxBlocks <= 0)
+            throw new IllegalArgumentException("Block size and cache size must be positive");
+        this.filename = filename;
+        this.rowOffsets = Arrays.copyOfRange(index.offsets, 2, index.offsets.length);
+        setGoals(index.goals);
+        this.blockRows = blockRows;
+        this.maxBlocks = maxBlocks;
+        blocks = new Block[(getRows() + blockRows - 1) / blockRows];
+    }
+
+    // what a scan finds in a map file
+    private static class MapIndex
+    {
+        // number of rows and columns, then the offset of the line where
+        // each row begins, then the length of the file
+        private final long[] offsets;
+        // indexes of the goal cells, in increasing order
+        private final int[] goals;
+
+        MapIndex(long[] offsets, int[] goals)
+        {
+            this.offsets = offsets;
+            this.goals = goals;
+        }
+    }
+
+    private static MapIndex scan(String filename)
+    throws IOException
+    {
+        // rows can only be found in a plain map file
+        if (MapFiles.isCompressed(filename))
+            throw new IOException("Map file " + filename + " is compressed");
+        try (InputStream in = new FileInputStream(filename)) {
+            long[] index = null;
+            int[] goals = new int[16];
+            int nRows = 0, nCols = 0, row = 0, col = 0, nGoals = 0;
+            long offset = 0, lineStart = 0;
+            boolean comment = false, firstChar = true;
+            StringBuilder header = null;
+            byte[] buffer = new byte[1 << 16];
+            int length = 0, position = 0;
+            while (true) {
+                if (position == length && length >= 0) {
+                    length = in.read(buffer);
+                    position = 0;
+                }
+                int ch = length < 0 ? -1 : buffer[position++] & 0xff;
+                // the end of the file ends the last line
+                if (ch == -1 && offset == lineStart)
+                    break;
+                if (ch != -1)
+                    offset += 1;
+                if (ch == '\n' || ch == -1) {
+                    if (header != null) {
+                        Matcher m = HEADER.matcher(header);
+                        if (m.find()) {
+                            if (m.group(1) != null)
+                                throw new IOException("Map file " + filename + " is run-length encoded");
+                            nRows = Integer.parseInt(m.group(2));
+                            nCols = Integer.parseInt(m.group(3));
+                            index = new long[nRows + 3];
+                            row = col = nGoals = 0;
+                        }
+                    }
+                    if (nCols > 0 && col == nCols) {
+                        row += 1;
+                        col = 0;
+                    }
+                    lineStart = offset;
+                    comment = false;
+                    firstChar = true;
+                    header = null;
+                } else if (Character.isWhitespace(ch)) {
+                    continue;
+                } else if (header != null) {
+                    header.append((char) ch);
+                } else if (comment) {
+                    continue;
+                } else if (ch == '@' || ch == '$') {
+                    // like Board, only a line beginning with '$' can be the header
+                    if (ch == '$' && firstChar)
+                        header = new StringBuilder("$");
+                    comment = true;
+                } else {
+                    firstChar = false;
+                    if (row < nRows && col < nCols) {
+                        if (col == 0)
+                            index[row + 2] = lineStart;
+                        if (ch == Tile.HEART.getChar()) {
+                            if (nGoals == goals.length)
+                                goals = Arrays.copyOf(goals, 2 * nGoals);
+                            goals[nGoals++] = row * nCols + col;
+                        }
+                        col += 1;
+                    }
+                }
+            }
+            if (index == null)
+                throw new IOException("Map file " + filename + " has no header");
+            index[0] = nRows;
+            index[1] = nCols;
+            // rows missing from the file begin, and end, at its end
+            for (int r = col > 0 ? row + 1 : row; r <= nRows; r++)
+                index[r + 2] = offset;
+            return new MapIndex(index, Arrays.copyOf(goals, nGoals));
+        }
+    }
+
+    @Override
+    Cell getCell(int row, int col)
+    {
+        return block(row / blockRows).cells[row % blockRows][col];
+    }
+
+    // synchronized with load, so that the block cannot be evicted
+    // before it is marked as changed
+    @Override
+    synchronized void setCell(int row, int col, Cell cell)
+    {
+        Block block = block(row / blockRows);
+        block.changed = true;
+        block.cells[row % blockRows][col] = cell;
+    }
+
+    @Override
+    int getOpenDirections(int index)
+    {
+        int row = index / getCols(), col = index % getCols();
+        int open = 0;
+        for (Direction direction: Direction.values()) {
+            if (isAccessible(row + direction.getRowStep(), col + direction.getColStep()))
+                open |= direction.bit();
+        }
+        return open;
+    }
+
+    @Override
+    synchronized long getContentHash()
+    {
+        if (!hashed) {
+            computeContentHash();
+            hashed = true;
+        }
+        return super.getContentHash();
+    }
+
+    // number of blocks currently decoded
+    synchronized int cachedBlocks()
+    {
+        return cached;
+    }
+
+    private Block block(int number)
+    {
+        Block block = blocks[number];
+        if (block == null)
+            block = load(number);
+        block.lastUse = ++clock;
+        return block;
+    }
+
+    private synchronized Block load(int number)
+    {
+        Block block = blocks[number];
+        if (block != null)
+            return block;
+        if (cached >= maxBlocks)
+            evict();
+        try {
+            block = new Block(decode(number * blockRows,
+                                     Math.min(getRows(), (number + 1) * blockRows)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read map file " + filename, e);
+        }
+        blocks[number] = block;
+        cached += 1;
+        return block;
+    }
+
+    // remove the least recently used unchanged block from the cache
+    private void evict()
+    {
+        int oldest = -1;
+        for (int number = 0; number < blocks.length; number++) {
+            Block block = blocks[number];
+            if (block != null && !block.changed
+                && (oldest < 0 || block.lastUse < blocks[oldest].lastUse))
+                oldest = number;
+        }
+        if (oldest >= 0) {
+            blocks[oldest] = null;
+            cached -= 1;
+        }
+    }
+
+    // cells of rows [from, to), read from the file
+    private Cell[][] decode(int from, int to)
+    throws IOException
+    {
+        int nCols = getCols();
+        Cell[][] result = new Cell[to - from][nCols];
+        byte[] bytes;
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            bytes = new byte[(int) (rowOffsets[to] - rowOffsets[from])];
+            file.seek(rowOffsets[from]);
+            file.readFully(bytes);
+        }
+        int row = 0, col = 0;
+        boolean comment = false;
+        for (int i = 0; i < bytes.length && row < result.length; i++) {
+            int ch = bytes[i];
+            if (ch == '\n') {
+                if (col == nCols) {
+                    row += 1;
+                    col = 0;
+                }
+                comment = false;
+            } else if (!comment && !Character.isWhitespace(ch)) {
+                if (ch == '@' || ch == '$')
+                    comment = true;
+                else if (col < nCols) {
+                    result[row][col] = cell(ch, (from + row) * nCols + col);
+                    col += 1;
+                }
+            }
+        }
+        // cells missing from the file are solid
+        for (row = 0; row < result.length; row++)
+            for (col = 0; col < nCols; col++)
+                if (result[row][col] == null)
+                    result[row][col] = new Cell(Tile.SOLID, getId((from + row) * nCols + col));
+        return result;
+    }
+
+    private Cell cell(int ch, int index)
+    {
+        Tile tile = Tile.EMPTY;
+        for (Tile candidate: MAP_TILES)
+            if (ch == candidate.getChar())
+                tile = candidate;
+        return new Cell(tile, getId(index));
+    }
+}
@@ -0,0 +1,81 @@
+package amazed.maze;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * <code>LoadBenchmark</code> compares the formats of map files. It
+ * writes a map in every format &mdash; plain text, gzip-compressed
+ * text, run-length encoded text, and gzip-compressed run-length
+ * encoded text &mdash; to temporary files, checks that every file
+ * reads back to the same board, and reports the size of every file,
+ * the average time to load it into a <code>Board</code>, the load
+ * throughput in cells per second, and the peak heap usage during a
+ * load.
+ * <p>
+ * Usage: <code>java amazed.maze.LoadBenchmark MAP [ROUNDS]</code>
+ */
+
+public class LoadBenchmark
+{
+    private static final String[] NAMES = { "plain", "gzip", "rle", "rle+gzip" };
+
+    public static void main(String[] args)
+    throws IOException
+    {
+        if (args.length < 1) {
+            System.out.println("usage: java amazed.maze.LoadBenchmark MAP [ROUNDS]");
+            System.exit(0);
+        }
+        int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+        Board original = new Board(args[0], 0);
+        long cells = (long) original.getRows() * original.getCols();
+        System.out.printf("%-9s %12s %12s %14s %14s%n",
+                          "format", "bytes", "ms per load", "Mcells per s", "peak heap MB");
+        for (int format = 0; format < NAMES.length; format++) {
+            File file = File.createTempFile("amazed-", ".map");
+            file.deleteOnExit();
+            MapFiles.write(original, file.getPath(), format >= 2, format % 2 == 1);
+            // warm up, and check that the board reads back the same
+            Board board = new Board(file.getPath(), 0);
+            if (board.getContentHash() != original.getContentHash())
+                throw new IllegalStateException("Format " + NAMES[format] + " changes the map");
+            board = null;
+            long total = 0, peak = 0;
+            for (int i = 0; i < rounds; i++) {
+                System.gc();
+                resetPeaks();
+                long start = System.nanoTime();
+                board = new Board(file.getPath(), 0);
+                total += System.nanoTime() - start;
+                peak = Math.max(peak, peakHeap());
+                board = null;
+            }
+            double time = total / 1e6 / rounds;
+            System.out.printf("%-9s %12d %12.1f %14.1f %14.1f%n",
+                              NAMES[format], file.length(), time,
+                              cells / time / 1e3, peak / 1048576.0);
+            file.delete();
+        }
+    }
+
+    private static void resetPeaks()
+    {
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+    }
+
+    // sum of the peak usage of the heap pools since the last reset
+    private static long peakHeap()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        return peak;
+    }
+}
@@ -0,0 +1,71 @@
+package amazed.maze;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+// formats of map files: plain text, or run-length encoded text where
+// a decimal count before a tile repeats it; either can be compressed
+// with gzip, which is recognized by the first bytes of the file
+class MapFiles
+{
+    // first two bytes of a gzip stream
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+
+    // is the file open in channel compressed with gzip?
+    static boolean isCompressed(FileChannel channel)
+    throws IOException
+    {
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        while (magic.hasRemaining() && channel.read(magic, magic.position()) > 0)
+            ;
+        return magic.position() == 2
+            && (magic.get(0) & 0xff) == GZIP_MAGIC_0 && (magic.get(1) & 0xff) == GZIP_MAGIC_1;
+    }
+
+    static boolean isCompressed(String filename)
+    throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            return isCompressed(channel);
+        }
+    }
+
+    // write the tiles of board to map file filename, run-length encoded
+    // if runLength, and compressed with gzip if compress
+    static void write(Board board, String filename, boolean runLength, boolean compress)
+    throws IOException
+    {
+        OutputStream file = new FileOutputStream(filename);
+        try (OutputStream out = new BufferedOutputStream(
+                 compress ? new GZIPOutputStream(file, 1 << 16) : file, 1 << 16)) {
+            int nRows = board.getRows(), nCols = board.getCols();
+            String header = (runLength ? "$rle " : "$") + nRows + "," + nCols + "\n";
+            out.write(header.getBytes(StandardCharsets.US_ASCII));
+            for (int row = 0; row < nRows; row++) {
+                for (int col = 0; col < nCols; ) {
+                    char ch = board.getCell(row, col).getTile().getChar();
+                    int run = 1;
+                    if (runLength) {
+                        while (col + run < nCols
+                               && board.getCell(row, col + run).getTile().getChar() == ch)
+                            run += 1;
+                        if (run > 1)
+                            out.write(Integer.toString(run).getBytes(StandardCharsets.US_ASCII));
+                    }
+                    out.write(ch);
+                    col += run;
+                }
+                out.write('\n');
+            }
+        }
+    }
+}
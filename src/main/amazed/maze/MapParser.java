@@ -0,0 +1,373 @@
+package amazed.maze;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.IntUnaryOperator;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <code>MapParser</code> reads the cells of a map file in parallel.
+ * <p>
+ * Creating a parser reads the file up to its header line, which gives
+ * the dimensions of the board. Method <code>parse</code> then splits the
+ * rest of the file into chunks of about <code>CHUNK_BYTES</code> bytes
+ * that end at a newline, and processes them with fork/join tasks
+ * in two passes over the memory-mapped chunks. The first pass counts
+ * the rows completed in every chunk; a prefix sum over these counts
+ * gives the row where every chunk begins. The second pass creates
+ * the cells of every chunk in the preallocated array of cells.
+ * <p>
+ * The cells of a row may span several lines, as long as the row is
+ * completed before the next begins; a chunk that does not begin at the
+ * start of a row is counted again, sequentially, from the column where
+ * the previous chunk ends. The result is the same as reading the file
+ * line by line: whitespace is ignored, <code>'@'</code> and
+ * <code>'$'</code> end a line, and rows and columns beyond the
+ * declared ones are ignored.
+ * <p>
+ * A map file compressed with gzip (see <code>MapFiles</code>) cannot be
+ * split, so it is decompressed as a stream: blocks of whole lines are
+ * read and counted one after the other, and the cells of every block
+ * are created by a fork/join task while the following blocks are
+ * read. A map whose header is <code>$rle ROWS,COLS</code> is
+ * run-length encoded: a decimal count before a tile repeats it
+ * that many times.
+ */
+
+class MapParser
+    implements AutoCloseable
+{
+    // approximate size of a chunk of the file
+    static final int CHUNK_BYTES = 1 << 20;
+
+    private static final Pattern HEADER = Pattern.compile("^\\$(rle)?(\\d+),(\\d+)$");
+    // maximum number of blocks of a compressed file waiting for their cells
+    private static final int MAX_PENDING = 2 * Runtime.getRuntime().availableProcessors();
+
+    // map character --> tile, or null if the character is not a tile
+    private static final Tile[] TILES = new Tile[128];
+    static {
+        for (Tile tile: new Tile[] { Tile.EMPTY, Tile.SOLID, Tile.BRICK, Tile.HEART })
+            TILES[tile.getChar()] = tile;
+    }
+
+    private final String filename;
+    private final FileChannel channel;
+    private final long size;
+    // decompressed content after the header, or null if the file is
+    // not compressed and is read in chunks
+    private final InputStream stream;
+    private int nRows = 0, nCols = 0;
+    private boolean runLength = false;
+    // offset of the first line after the header
+    private long dataStart;
+
+    // parser of map file filename, positioned after its header
+    MapParser(String filename)
+    throws IOException
+    {
+        this.filename = filename;
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        size = channel.size();
+        dataStart = size;
+        if (MapFiles.isCompressed(channel)) {
+            stream = new BufferedInputStream(
+                new GZIPInputStream(Channels.newInputStream(channel), CHUNK_BYTES >> 4), CHUNK_BYTES >> 4);
+            readHeader(stream);
+        } else {
+            stream = null;
+            readHeader(new BufferedInputStream(Channels.newInputStream(channel), 1 << 12));
+        }
+    }
+
+    int getRows()
+    {
+        return nRows;
+    }
+
+    int getCols()
+    {
+        return nCols;
+    }
+
+    // fill board, of getRows() rows and getCols() columns, with the cells
+    // of the file, where the cell with index i has node id ids(i)
+    void parse(Cell[][] board, IntUnaryOperator ids)
+    throws IOException
+    {
+        if (stream != null) {
+            parseStream(board, ids);
+            return;
+        }
+        long[] bounds = chunkBounds();
+        int chunks = bounds.length - 1;
+        // rows completed and column where each chunk ends, starting
+        // at the beginning of a row
+        long[] counts = new long[chunks];
+        try {
+            new ChunkTask(this, bounds, counts, null, null, null, null, 0, chunks).invoke();
+            // prefix sum over the chunks: where each chunk begins
+            int[] startRows = new int[chunks], startCols = new int[chunks];
+            int row = 0, col = 0;
+            for (int i = 0; i < chunks; i++) {
+                startRows[i] = row;
+                startCols[i] = col;
+                long end = col == 0 ? counts[i]
+                    : walk(map(bounds[i], bounds[i + 1]), 0, col, Integer.MAX_VALUE, null, null);
+                int rows = (int) (end >>> 32);
+                row = (int) Math.min(nRows, (long) row + rows);
+                col = row == nRows ? 0 : (int) end;
+            }
+            new ChunkTask(this, bounds, null, startRows, startCols, board, ids, 0, chunks).invoke();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // read the blocks of whole lines of the compressed stream, counting
+    // each block here and filling it in a task while the next is read
+    private void parseStream(Cell[][] board, IntUnaryOperator ids)
+    throws IOException
+    {
+        Deque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+        byte[] block = new byte[CHUNK_BYTES];
+        int length = 0, row = 0, col = 0;
+        while (row < nRows) {
+            int n = 0;
+            while (length < block.length && (n = stream.read(block, length, block.length - length)) > 0)
+                length += n;
+            boolean last = n < 0;
+            int complete = length;
+            if (!last) {
+                while (complete > 0 && block[complete - 1] != '\n')
+                    complete -= 1;
+                // a line longer than the block
+                if (complete == 0) {
+                    block = Arrays.copyOf(block, 2 * block.length);
+                    continue;
+                }
+            }
+            ByteBuffer lines = ByteBuffer.wrap(block, 0, complete).slice();
+            long counted = walk(lines, 0, col, Integer.MAX_VALUE, null, null);
+            int startRow = row, startCol = col;
+            pending.add(ForkJoinTask.adapt(() -> walk(lines, startRow, startCol, nRows, board, ids)).fork());
+            if (pending.size() > MAX_PENDING)
+                pending.remove().join();
+            row = (int) Math.min(nRows, (long) row + (counted >>> 32));
+            col = row == nRows ? 0 : (int) counted;
+            if (last)
+                break;
+            // the block now belongs to the task
+            byte[] next = new byte[block.length];
+            System.arraycopy(block, complete, next, 0, length - complete);
+            length -= complete;
+            block = next;
+        }
+        for (ForkJoinTask<?> task: pending)
+            task.join();
+    }
+
+    @Override
+    public void close()
+    throws IOException
+    {
+        if (stream != null)
+            stream.close();
+        channel.close();
+    }
+
+    // read the lines of in up to the first that is a header, ignoring whitespace
+    private void readHeader(InputStream in)
+    throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        long offset = 0;
+        int ch;
+        do {
+            ch = in.read();
+            if (ch != -1)
+                offset += 1;
+            if (ch == '\n' || ch == -1) {
+                Matcher m = HEADER.matcher(line);
+                if (m.find()) {
+                    runLength = m.group(1) != null;
+                    nRows = Integer.parseInt(m.group(2));
+                    nCols = Integer.parseInt(m.group(3));
+                    dataStart = offset;
+                    return;
+                }
+                line.setLength(0);
+            } else if (!isWhitespace(ch)) {
+                line.append((char) ch);
+            }
+        } while (ch != -1);
+    }
+
+    // offsets where chunks begin, then the size of the file; every chunk
+    // but the last ends with a newline
+    private long[] chunkBounds()
+    throws IOException
+    {
+        // every chunk but the last has at least CHUNK_BYTES bytes
+        long[] bounds = new long[(int) ((size - dataStart) / CHUNK_BYTES) + 2];
+        int count = 0;
+        bounds[count++] = dataStart;
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        long offset = dataStart + CHUNK_BYTES - 1;
+        // a chunk ends after the first newline at or after offset
+        while (offset < size) {
+            buffer.clear();
+            int length = channel.read(buffer, offset);
+            int i = 0;
+            while (i < length && buffer.get(i) != '\n')
+                i += 1;
+            if (i == length) {
+                offset += length;
+            } else if (offset + i + 1 < size) {
+                bounds[count++] = offset + i + 1;
+                offset += i + CHUNK_BYTES;
+            } else {
+                break;
+            }
+        }
+        bounds[count++] = size;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private MappedByteBuffer map(long from, long to)
+    throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    }
+
+    // go through the lines of chunk, starting at column col of row, and
+    // storing the cells in board unless it is null; return the number of
+    // rows completed (in the upper half) and the column where the chunk
+    // ends (in the lower half); rows from maxRows on are ignored
+    private long walk(ByteBuffer chunk, int row, int col, int maxRows, Cell[][] board,
+                      IntUnaryOperator ids)
+    {
+        int first = row;
+        boolean comment = false;
+        // count of the next tile in a run-length encoded map
+        int run = 0;
+        int length = chunk.limit();
+        for (int i = 0; i < length; i++) {
+            int ch = chunk.get(i);
+            if (ch == '\n') {
+                if (nCols > 0 && col == nCols) {
+                    row += 1;
+                    col = 0;
+                }
+                comment = false;
+                run = 0;
+            } else if (comment || isWhitespace(ch)) {
+                continue;
+            } else if (ch == '@' || ch == '$') {
+                comment = true;
+            } else if (runLength && '0' <= ch && ch <= '9') {
+                if (run < 1 << 27)
+                    run = 10 * run + ch - '0';
+            } else {
+                Tile tile = null;
+                if (board != null) {
+                    tile = ch >= 0 && ch < TILES.length ? TILES[ch] : null;
+                    if (tile == null) {
+                        System.out.println("Unrecognized symbol " +
+                                           Character.toString((char) (ch & 0xff)) + " on " +
+                                           "row " + row + " column " + col);
+                        System.out.println("... using empty cell instead.");
+                        tile = Tile.EMPTY;
+                    }
+                }
+                // Ignore rows and columns beyond the declared ones
+                for (int k = run == 0 ? 1 : run; k > 0 && row < maxRows && col < nCols; k--) {
+                    if (board != null)
+                        board[row][col] = new Cell(tile, ids.applyAsInt(row * nCols + col));
+                    col += 1;
+                }
+                run = 0;
+            }
+        }
+        // the end of the file ends the last line
+        if (length > 0 && chunk.get(length - 1) != '\n' && nCols > 0 && col == nCols) {
+            row += 1;
+            col = 0;
+        }
+        return ((long) (row - first) << 32) | col;
+    }
+
+    private static boolean isWhitespace(int ch)
+    {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == 0x0b || ch == '\f' || ch == '\r';
+    }
+
+    // counts (if board is null) or fills (otherwise) chunks [from, to)
+    private static class ChunkTask extends RecursiveAction
+    {
+        private final MapParser parser;
+        private final long[] bounds;
+        private final long[] counts;
+        private final int[] startRows;
+        private final int[] startCols;
+        private final Cell[][] board;
+        private final IntUnaryOperator ids;
+        private final int from, to;
+
+        // counts into counts if board is null; otherwise fills board
+        // starting from startRows and startCols
+        ChunkTask(MapParser parser, long[] bounds, long[] counts,
+                  int[] startRows, int[] startCols, Cell[][] board,
+                  IntUnaryOperator ids, int from, int to)
+        {
+            this.parser = parser;
+            this.bounds = bounds;
+            this.counts = counts;
+            this.startRows = startRows;
+            this.startCols = startCols;
+            this.board = board;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(parser, bounds, counts, startRows, startCols,
+                                        board, ids, from, middle),
+                          new ChunkTask(parser, bounds, counts, startRows, startCols,
+                                        board, ids, middle, to));
+                return;
+            }
+            if (to == from)
+                return;
+            try {
+                ByteBuffer chunk = parser.map(bounds[from], bounds[from + 1]);
+                if (board == null)
+                    counts[from] = parser.walk(chunk, 0, 0, Integer.MAX_VALUE, null, null);
+                else
+                    parser.walk(chunk, startRows[from], startCols[from], parser.nRows, board, ids);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read map file " + parser.filename, e);
+            }
+        }
+    }
+}
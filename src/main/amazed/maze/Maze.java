@@ -3,10 +3,12 @@ package amazed.maze;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.HashSet;
-import java.util.ListIterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * <code>Maze</code> is the main public class through which methods
@@ -16,8 +18,10 @@ import java.util.Set;
  * be explored incrementally.  Every node in the graph represents a
  * <em>cell</em>, which can be thought as a room in the maze.  Every
  * node has an identifier &mdash; an integer whose value is unique
- * within the maze.  Node identifiers are generated randomly at every
- * object creation, and thus they are not persistent or deterministic.
+ * within the maze.  Node identifiers are a pseudo-random permutation
+ * of the cells, determined by a seed: unless the seed is given when
+ * the maze is created, it is random, and thus the identifiers are not
+ * persistent or deterministic.
  * <p>
  * Exploration of a maze begins at the start node, whose identifier
  * is returned by method <code>start</code>.  Given the identifier
@@ -25,17 +29,39 @@ import java.util.Set;
  * identifiers of all nodes adjacent to it.  Method
  * <code>hasGoal</code> determines if a given node contains a goal.
  * <p>
- * Finally, methods <code>spawn</code> and <code>move</code> animate
+ * Bricks can be removed from, and added to, a maze while it is
+ * explored, through method <code>toggleBrick</code>.
+ * <p>
+ * Methods <code>spawn</code> and <code>move</code> animate
  * icons of players that move around the maze in its graphical
  * representation.
+ * <p>
+ * Method <code>timings</code> returns the latencies of the phases of
+ * solving the maze, recorded by the maze itself and by its solvers.
+ * <p>
+ * Finally, a maze whose cells are stored off-heap (see
+ * <code>BoardStorage</code>) owns an <code>OffHeapArena</code>, where
+ * solvers can allocate their own structures, and which is released
+ * when the maze is closed.
  *
  * @author  Carlo A. Furia
  */
 
-public class Maze
+public class Maze implements AutoCloseable
 {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
     private Board board;
 
+    // name of the map file, if the maze was read from one
+    private String filename;
+    // computed on demand, discarded when the maze changes
+    private DistanceField distanceField;
+    // memory of an off-heap maze, or null
+    private OffHeapArena arena;
+    // latencies of reading, preprocessing, and solving the maze
+    private final Timings timings = new Timings();
+
     Board getBoard()
     {
         return board;
@@ -52,7 +78,58 @@ public class Maze
      */
     Maze(String filename)
     {
-        board = new Board(filename);
+        this(filename, BoardStorage.IN_MEMORY);
+    }
+
+    /**
+     * Creates a maze by reading a map from file, and storing its
+     * cells as described by <code>storage</code>: all at once on the
+     * heap; lazily, indexing the rows of the file when the maze is
+     * created and reading blocks of rows as the search reaches them;
+     * or all at once off the heap. Unless the cells are stored lazily
+     * or off the heap, the map file may be compressed with gzip, and
+     * may be run-length encoded (see <code>MapParser</code>).
+     *
+     * @param filename   the name of the text file containing the map
+     * @param storage    how the cells of the maze are stored
+     */
+    Maze(String filename, BoardStorage storage)
+    {
+        this(filename, storage, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a maze by reading a map from file, as in
+     * {@link #Maze(String, BoardStorage)}, whose node identifiers are
+     * determined by a seed: mazes created from the same map with the
+     * same seed have the same node identifiers.
+     *
+     * @param filename   the name of the text file containing the map
+     * @param storage    how the cells of the maze are stored
+     * @param idSeed     the seed of the node identifiers
+     */
+    Maze(String filename, BoardStorage storage, long idSeed)
+    {
+        long begin = System.nanoTime();
+        try {
+            switch (storage) {
+            case LAZY:
+                board = new LazyBoard(filename, LazyBoard.DEFAULT_BLOCK_ROWS,
+                                      LazyBoard.DEFAULT_MAX_BLOCKS, idSeed);
+                break;
+            case OFF_HEAP:
+                arena = new OffHeapArena();
+                board = new OffHeapBoard(filename, idSeed, arena);
+                break;
+            default:
+                board = new Board(filename, idSeed);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: cannot open map file " + filename + ": " + e.getMessage());
+            System.exit(1);
+        }
+        this.filename = filename;
+        timings.record(Phase.PARSE, begin);
     }
 
     // initialize Maze wrapping given board
@@ -61,6 +138,43 @@ public class Maze
         this.board = board;
     }
 
+    /**
+     * Returns the latencies recorded while reading, preprocessing,
+     * and solving this maze. Solvers record the latencies of their
+     * phases here.
+     *
+     * @return   the timings of the maze
+     */
+    public Timings timings()
+    {
+        return timings;
+    }
+
+    /**
+     * Returns the arena where the cells of this maze are stored, if
+     * they are stored off-heap. Solvers may allocate structures in the
+     * arena, which can be used until the maze is closed.
+     *
+     * @return   the arena of the maze; <code>null</code> if the cells of
+     *           the maze are stored on the heap
+     */
+    public OffHeapArena offHeapArena()
+    {
+        return arena;
+    }
+
+    /**
+     * Releases the off-heap memory of this maze, if any. The maze and
+     * the structures allocated in its arena cannot be used after it
+     * is closed.
+     */
+    @Override
+    public void close()
+    {
+        if (arena != null)
+            arena.close();
+    }
+
     void setDelay(int delay)
     {
         this.delay = delay;
@@ -81,7 +195,7 @@ public class Maze
      */
     public int start()
     {
-        return board.getCell(0, 0).getId();
+        return board.getId(0);
     }
 
     /**
@@ -97,17 +211,22 @@ public class Maze
     public Set<Integer> neighbors(int id)
     {
         Set<Integer> neighbors = new HashSet<>(4);
-        Position position = board.getPosition(id);
-        for (Direction direction: Direction.values()) {
-            Position newPosition = board.move(position, direction);
-            if (newPosition != null)
-                neighbors.add(board.getCell(newPosition).getId());
+        int index = board.getIndex(id);
+        int cols = board.getCols();
+        int open = board.getOpenDirections(index);
+        for (Direction direction: DIRECTIONS) {
+            if ((open & direction.bit()) != 0)
+                neighbors.add(board.getId(index + direction.getRowStep() * cols
+                                          + direction.getColStep()));
         }
         return neighbors;
     }
 
     /**
-     * Tests whether a given node contains a goal.
+     * Tests whether a given node contains a goal. The identifiers of
+     * the goals are sorted when the maze is created, so this is a
+     * binary search among them, which does not need the cell index of
+     * the node; given a cell index, <code>hasGoalAt</code> is a bit test.
      *
      * @param id   the identifier of a node in the maze
      * @return     <code>true</code> if the node with identifier <code>id</code> is a goal;
@@ -115,12 +234,326 @@ public class Maze
      */
     public boolean hasGoal(int id)
     {
-        return board.getCell(id).isHeart();
+        return board.isGoalId(id);
+    }
+
+    /**
+     * Returns the cell indexes of all goals of the maze, in
+     * increasing order.
+     *
+     * @return   a new array with the cell index of every goal
+     */
+    public int[] goals()
+    {
+        return board.getGoals().clone();
+    }
+
+    /**
+     * Returns the number of goals of the maze. A search can stop at
+     * once if it is <code>0</code>.
+     *
+     * @return   the number of goals
+     */
+    public int goalCount()
+    {
+        return board.getGoals().length;
+    }
+
+    /**
+     * Returns the number of rows of the grid underlying the maze.
+     *
+     * @return   the number of rows in the maze
+     */
+    public int rows()
+    {
+        return board.getRows();
+    }
+
+    /**
+     * Returns the number of columns of the grid underlying the maze.
+     *
+     * @return   the number of columns in the maze
+     */
+    public int cols()
+    {
+        return board.getCols();
+    }
+
+    /**
+     * Returns a hash of the content of the maze: its dimensions and
+     * the tile of every cell. Unlike node identifiers, which are
+     * random, the hash is the same every time the same map is
+     * loaded.
+     *
+     * @return   a 64-bit hash of the maze's grid
+     */
+    public long contentHash()
+    {
+        return board.getContentHash();
+    }
+
+    /**
+     * Returns the position of a node in the grid underlying the maze,
+     * as a row-major index <code>row * cols() + col</code>. Unlike
+     * node identifiers, cell indexes are dense and deterministic, so
+     * solvers can use them to address compact arrays.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the cell index of the node with identifier <code>id</code>
+     */
+    public int cellIndex(int id)
+    {
+        return board.getIndex(id);
+    }
+
+    /**
+     * Returns the identifier of the node at a given cell index; this
+     * is the inverse of <code>cellIndex</code>.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        the identifier of the node at <code>index</code>
+     */
+    public int cellId(int index)
+    {
+        return board.getId(index);
+    }
+
+    /**
+     * Converts a sequence of cell indexes to the sequence of the
+     * identifiers of the nodes at those cells.
+     *
+     * @param cells   cell indexes in <code>[0, rows() * cols())</code>
+     * @return        the list of the identifiers of the nodes at <code>cells</code>
+     */
+    public List<Integer> cellIds(int[] cells)
+    {
+        List<Integer> ids = new ArrayList<>(cells.length);
+        for (int index: cells)
+            ids.add(cellId(index));
+        return ids;
+    }
+
+    /**
+     * Returns the cell index adjacent to a given one in a given
+     * direction, whether or not that cell is accessible.
+     *
+     * @param index       a cell index in <code>[0, rows() * cols())</code>
+     * @param direction   the direction to move in
+     * @return            the index of the cell next to <code>index</code> in
+     *                    <code>direction</code>; <code>-1</code> if that
+     *                    is outside the maze
+     */
+    public int step(int index, Direction direction)
+    {
+        int cols = board.getCols();
+        int row = index / cols + direction.getRowStep();
+        int col = index % cols + direction.getColStep();
+        if (!board.isOnBoard(row, col))
+            return -1;
+        return row * cols + col;
+    }
+
+    /**
+     * Returns the direction that leads from a cell to an adjacent
+     * one.
+     *
+     * @param from   a cell index in <code>[0, rows() * cols())</code>
+     * @param to     a cell index adjacent to <code>from</code>
+     * @return       the direction such that <code>step(from, direction) == to</code>;
+     *               <code>null</code> if the two cells are not adjacent
+     */
+    public Direction direction(int from, int to)
+    {
+        int cols = board.getCols();
+        int difference = to - from;
+        if (difference == -cols)
+            return Direction.NORTH;
+        if (difference == cols)
+            return Direction.SOUTH;
+        if (difference == -1 && from % cols != 0)
+            return Direction.WEST;
+        if (difference == 1 && to % cols != 0)
+            return Direction.EAST;
+        return null;
+    }
+
+    /**
+     * Returns the directions in which the cell at a given cell index
+     * has an accessible neighbor, as a mask where direction
+     * <code>d</code> is represented by bit <code>d.bit()</code>. The
+     * mask is computed when the maze is loaded, so this is a single
+     * table lookup.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        the mask of open directions from <code>index</code>
+     */
+    public int openDirections(int index)
+    {
+        return board.getOpenDirections(index);
+    }
+
+    /**
+     * Tests whether the cell at a given cell index can be entered.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        <code>true</code> if the cell at <code>index</code> is accessible;
+     *                <code>false</code> otherwise
+     */
+    public boolean isOpen(int index)
+    {
+        return board.isAccessible(index / board.getCols(), index % board.getCols());
+    }
+
+    /**
+     * Tests whether the cell at a given cell index contains a goal.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        <code>true</code> if the cell at <code>index</code> is a goal;
+     *                <code>false</code> otherwise
+     */
+    public boolean hasGoalAt(int index)
+    {
+        return board.isHeart(index);
+    }
+
+    /**
+     * Tests whether the cell at a given cell index contains a brick.
+     *
+     * @param index   a cell index in <code>[0, rows() * cols())</code>
+     * @return        <code>true</code> if the cell at <code>index</code> is a brick;
+     *                <code>false</code> otherwise
+     */
+    public boolean isBrick(int index)
+    {
+        return board.isBrick(index);
+    }
+
+    /**
+     * Removes the brick from the cell at a given cell index, making
+     * it empty, or puts a brick on it if it is empty. The open
+     * directions of the adjacent cells and the content hash of the
+     * maze are updated accordingly. This method is not thread safe:
+     * no solver should be running on the maze while it is called.
+     *
+     * @param index   the cell index of a brick or empty cell
+     * @return        <code>true</code> if the cell at <code>index</code> is
+     *                accessible after the change; <code>false</code> otherwise
+     * @throws IllegalArgumentException   if the cell at <code>index</code>
+     *                                    is neither a brick nor empty
+     */
+    public boolean toggleBrick(int index)
+    {
+        synchronized (this) {
+            distanceField = null;
+        }
+        return board.toggleBrick(index);
+    }
+
+    /**
+     * Returns the distance field of the maze, which gives the
+     * distance from every cell to the nearest goal. The field is
+     * computed, in parallel, the first time it is needed; if the maze
+     * was read from a map file, and a distance field of the same map
+     * was saved next to it with <code>saveDistanceField</code>, the
+     * field is read from that file instead.
+     *
+     * @return   the distance field of the maze
+     */
+    public synchronized DistanceField distanceField()
+    {
+        if (distanceField == null) {
+            long begin = System.nanoTime();
+            File saved = distanceFieldFile();
+            if (saved != null && saved.isFile()) {
+                try {
+                    loadDistanceField(saved);
+                } catch (IOException e) {
+                    System.err.println("Warning: cannot read distance field " + saved);
+                }
+            }
+            if (distanceField == null)
+                distanceField = DistanceField.compute(board);
+            timings.record(Phase.PREPROCESS, begin);
+        }
+        return distanceField;
+    }
+
+    /**
+     * Reads the distance field of the maze from a file written by
+     * {@link DistanceField#write(File)}.
+     *
+     * @param file   the file to read
+     * @return       <code>true</code> if <code>file</code> contains the
+     *               distance field of this maze, which is then used by
+     *               <code>distanceField</code>; <code>false</code> otherwise
+     * @throws IOException   if the file cannot be read
+     */
+    public synchronized boolean loadDistanceField(File file)
+    throws IOException
+    {
+        DistanceField field = DistanceField.read(file, board);
+        if (field != null)
+            distanceField = field;
+        return field != null;
+    }
+
+    /**
+     * Writes the distance field of the maze next to the map file
+     * the maze was read from, with the same name followed by
+     * <code>.dist</code>.
+     *
+     * @throws IOException   if the file cannot be written, or the
+     *                       maze was not read from a map file
+     */
+    public void saveDistanceField()
+    throws IOException
+    {
+        File file = distanceFieldFile();
+        if (file == null)
+            throw new IOException("maze was not read from a map file");
+        distanceField().write(file);
+    }
+
+    private File distanceFieldFile()
+    {
+        return filename == null ? null : new File(filename + ".dist");
+    }
+
+    /**
+     * Returns the length of a shortest path from a node to the
+     * nearest goal, using the distance field of the maze.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the number of steps from <code>id</code> to the nearest
+     *             goal; {@link DistanceField#UNREACHABLE} if no goal can be
+     *             reached from <code>id</code>
+     */
+    public int distanceToGoal(int id)
+    {
+        return distanceField().distance(board.getIndex(id));
+    }
+
+    /**
+     * Returns the next node on a shortest path from a node to the
+     * nearest goal, using the distance field of the maze.
+     *
+     * @param id   the identifier of a node in the maze
+     * @return     the identifier of the node adjacent to <code>id</code>
+     *             that is one step closer to a goal; <code>id</code> itself
+     *             if it is a goal or no goal can be reached from it
+     */
+    public int nextStepToGoal(int id)
+    {
+        int next = distanceField().nextStep(board.getIndex(id));
+        return next < 0 ? id : cellId(next);
     }
 
     /**
      * Tests whether a sequence of node identifiers corresponds to a
-     * connected path from the start node to a goal.
+     * connected path from the start node to a goal. Long paths are
+     * split into chunks that are validated in parallel; a view
+     * returned by <code>CompactPath.asList</code> is validated by
+     * following the moves of its path.
      *
      * @param path   a list of identifiers nodes in the maze
      * @return       <code>true</code> if <code>path</code> begins with the
@@ -128,21 +561,51 @@ public class Maze
      *               nodes, and ends with a goal node;
      *               <code>false</code> otherwise
      */
-    boolean isValidPath(List<Integer> path)
-    {
-        if (path.isEmpty())
-            return false;
-        ListIterator<Integer> iter = path.listIterator();
-        int prev = 0, curr = iter.next();
-        if (curr != start())
-            return false;
-        while (iter.hasNext()) {
-            prev = curr;
-            curr = iter.next();
-            if (!neighbors(prev).contains(curr))
-                return false;
-        }
-        return hasGoal(curr);
+    public boolean isValidPath(List<Integer> path)
+    {
+        CompactPath compact = CompactPath.of(path);
+        if (compact != null)
+            return isValidPath(compact);
+        long begin = System.nanoTime();
+        boolean valid = new PathValidator(board, start()).isValid(path);
+        timings.record(Phase.VALIDATION, begin);
+        return valid;
+    }
+
+    /**
+     * Tests whether a compact path is a connected path from the start
+     * node to a goal, as in <code>isValidPath(List)</code>, following
+     * its moves without computing node identifiers.
+     *
+     * @param path   a path in this maze
+     * @return       <code>true</code> if <code>path</code> begins with the
+     *               start node, only moves through open directions, and
+     *               ends with a goal node; <code>false</code> otherwise
+     */
+    public boolean isValidPath(CompactPath path)
+    {
+        long begin = System.nanoTime();
+        boolean valid = path.maze() == this && new PathValidator(board, start()).isValid(path);
+        timings.record(Phase.VALIDATION, begin);
+        return valid;
+    }
+
+    /**
+     * Tests, in parallel, whether each of a batch of sequences of
+     * node identifiers is a connected path from the start node to a
+     * goal, as in <code>isValidPath</code>.
+     *
+     * @param paths   a list of lists of identifiers of nodes in the maze
+     * @return        an array whose element <code>i</code> is
+     *                <code>true</code> if and only if
+     *                <code>paths.get(i)</code> is a valid path
+     */
+    public boolean[] validatePaths(List<? extends List<Integer>> paths)
+    {
+        long begin = System.nanoTime();
+        boolean[] valid = new PathValidator(board, start()).areValid(paths);
+        timings.record(Phase.VALIDATION, begin);
+        return valid;
     }
 
     /**
@@ -0,0 +1,57 @@
+package amazed.maze;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JDK Flight Recorder events of reading and displaying mazes, enabled
+// by the amazed.jfc profile; see amazed.solver.SolverEvents for when
+// they are created
+class MazeEvents
+{
+    private static final boolean FORCED = Boolean.getBoolean("amazed.jfr");
+
+    // whether events may be recorded, as in SolverEvents.enabled
+    static boolean enabled()
+    {
+        return FORCED || FlightRecorder.isInitialized();
+    }
+    @Name("amazed.MapRead")
+    @Label("Map Read")
+    @Category({ "Amazed", "Maze" })
+    @Description("Reading the cells of a map file into a board")
+    @StackTrace(false)
+    static class MapRead extends Event
+    {
+        @Label("File")
+        String file;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Columns")
+        int cols;
+    }
+
+    @Name("amazed.Display")
+    @Label("Display")
+    @Category({ "Amazed", "Maze" })
+    @Description("Rebuilding the graphical representation of a board")
+    @StackTrace(false)
+    static class Display extends Event
+    {
+        @Label("Rows")
+        int rows;
+
+        @Label("Columns")
+        int cols;
+
+        @Label("Players")
+        @Description("Cells showing at least one player")
+        int players;
+    }
+}
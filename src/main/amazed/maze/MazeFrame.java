@@ -9,7 +9,6 @@ import java.awt.Color;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import javax.swing.ImageIcon;
 import javax.swing.OverlayLayout;
 import javax.swing.JFrame;
 import javax.swing.JButton;
@@ -44,19 +43,19 @@ class CellButton extends JPanel {
         setLayout(new OverlayLayout(this));
         setOpaque(false);
 
-        JButton image = new JButton(new ImageIcon(cell.getImage()));
+        JButton image = new JButton(cell.getIcon());
         image.setAlignmentX(JButton.CENTER_ALIGNMENT);
         image.setAlignmentY(JButton.CENTER_ALIGNMENT);
 
-        Player[] players = cell.getPlayers();
-        if (players.length > 1) {
+        int players = cell.getPlayerCount();
+        if (players > 1) {
             JButton text = new JButton();
-            text.setText(Integer.toString(players.length));
+            text.setText(Integer.toString(players));
             text.setMaximumSize(new Dimension(50,50));
             text.setAlignmentX(JButton.RIGHT_ALIGNMENT);
             text.setAlignmentY(JButton.BOTTOM_ALIGNMENT);
             text.setFont(new Font(null, Font.BOLD, 16));
-            text.setForeground(visibleTextColor(players[0]));
+            text.setForeground(visibleTextColor(cell.getShownPlayer()));
             text.setBorder(null);
             text.setOpaque(false);
             text.setContentAreaFilled(false);
@@ -127,16 +126,29 @@ class MazeFrame
 
     private void displayBoard()
     {
+        MazeEvents.Display event = MazeEvents.enabled() ? new MazeEvents.Display() : null;
+        if (event != null)
+            event.begin();
         panel.removeAll();
         Board b = board.consistentBoard();
+        int players = 0;
         for (int row = 0; row < b.getRows(); row++) {
             for (int col = 0; col < b.getCols(); col++) {
-                panel.add(new CellButton(b.getCell(row, col)));
+                Cell cell = b.getCell(row, col);
+                if (cell.getPlayerCount() > 0)
+                    players += 1;
+                panel.add(new CellButton(cell));
             }
         }
         Toolkit.getDefaultToolkit().sync();
         panel.revalidate();
         panel.repaint();
+        if (event != null && event.shouldCommit()) {
+            event.rows = b.getRows();
+            event.cols = b.getCols();
+            event.players = players;
+            event.commit();
+        }
     }
 
     @Override
@@ -0,0 +1,329 @@
+package amazed.maze;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import amazed.solver.MultiStartSolver;
+
+/**
+ * <code>MazeServer</code> answers queries about mazes that it reads
+ * once, when it is created, and keeps in memory together with their
+ * distance fields, so that a query does not pay for starting a JVM,
+ * reading a map, or searching it from scratch.
+ * <p>
+ * Queries are lines of text, read from a stream (see
+ * <code>serve</code>) or from the connections to a local socket (see
+ * <code>listen</code>). The first word of a query is a command, and
+ * the following words its arguments; <code>MAP</code> is the name of
+ * a map file, as given when the server was created, and
+ * <code>ID</code> the identifier of a node in its maze:
+ * <ul>
+ * <li><code>maps</code>: the names of the maps
+ * <li><code>start MAP</code>: the identifier of the start node
+ * <li><code>id MAP ROW COL</code>: the identifier of the node at row
+ *     <code>ROW</code> and column <code>COL</code>
+ * <li><code>distance MAP ID...</code>: the length of a shortest path
+ *     from every node to the nearest goal, or <code>-1</code> if no
+ *     goal can be reached from it
+ * <li><code>reachable MAP ID...</code>: whether a goal can be reached
+ *     from every node
+ * <li><code>path MAP ID</code>: the identifiers of the nodes on a
+ *     shortest path from the node to the nearest goal
+ * <li><code>stats</code>: the latencies of the queries answered so
+ *     far, by command
+ * <li><code>quit</code>: closes the connection, or the stream
+ * </ul>
+ * Every query gets a reply line, in the order of the queries:
+ * <code>ok</code> followed by the result, <code>none</code> if a path
+ * query has no answer, or <code>error</code> followed by a message.
+ * Blank lines are ignored, and get no reply.
+ * Queries are answered concurrently by the worker threads of a
+ * <code>ForkJoinPool</code>; the latency of a query is measured from
+ * when it is read to when its reply is ready.
+ */
+
+public class MazeServer implements AutoCloseable
+{
+    // commands whose latencies are recorded
+    private static final String[] COMMANDS =
+        { "maps", "start", "id", "distance", "reachable", "path", "stats" };
+
+    // maximum number of replies of a connection waiting to be written;
+    // when it is reached, no more queries are read from the connection
+    private static final int MAX_PENDING = 1024;
+
+    // marks the end of the replies of a connection
+    private static final CompletableFuture<String> END = CompletableFuture.completedFuture(null);
+
+    // map name --> maze; read-only after construction
+    private final Map<String, Maze> mazes = new LinkedHashMap<>();
+    // command --> latencies of its queries; read-only after construction
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a server reading the mazes in map files
+     * <code>maps</code>, and computing their distance fields.
+     *
+     * @param maps      the names of the map files
+     * @param storage   how the cells of the mazes are stored
+     * @param idSeed    the seed of the node identifiers of the mazes
+     * @param pool      the pool whose workers answer the queries
+     */
+    public MazeServer(List<String> maps, BoardStorage storage, long idSeed, ForkJoinPool pool)
+    {
+        this.pool = pool;
+        for (String map: maps) {
+            Maze maze = new Maze(map, storage, idSeed);
+            maze.setDelay(-1);
+            pool.submit(() -> maze.distanceField()).join();
+            mazes.put(map, maze);
+        }
+        for (String command: COMMANDS)
+            latencies.put(command, new LatencyHistogram());
+    }
+
+    /**
+     * Answers the queries read from <code>in</code>, writing the
+     * replies to <code>out</code>, until the end of <code>in</code> or
+     * a <code>quit</code> query.
+     *
+     * @param in    the stream of queries
+     * @param out   the stream of replies
+     * @throws IOException            if reading <code>in</code> fails
+     * @throws InterruptedException   if interrupted while waiting for
+     *                                replies to be written
+     */
+    public void serve(InputStream in, OutputStream out)
+    throws IOException, InterruptedException
+    {
+        BlockingQueue<CompletableFuture<String>> replies = new ArrayBlockingQueue<>(MAX_PENDING);
+        Thread writer = new Thread(() -> writeReplies(replies, out),
+                                   Thread.currentThread().getName() + "-replies");
+        writer.start();
+        try {
+            BufferedReader reader =
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null && !line.trim().equals("quit")) {
+                if (line.isBlank())
+                    continue;
+                long start = System.nanoTime();
+                String query = line;
+                replies.put(CompletableFuture.supplyAsync(() -> answer(query, start), pool));
+            }
+        } finally {
+            replies.put(END);
+            writer.join();
+        }
+    }
+
+    /**
+     * Accepts connections to a local socket, and answers the queries
+     * of every connection in its own thread, as in <code>serve</code>.
+     * This method returns only if accepting a connection fails.
+     *
+     * @param address   the address of the socket: a TCP address, or the
+     *                  path of a Unix domain socket, which replaces any
+     *                  file at the path and is deleted when the method
+     *                  returns
+     * @throws IOException   if the socket cannot be bound, or accepting
+     *                       a connection fails
+     */
+    public void listen(SocketAddress address)
+    throws IOException
+    {
+        boolean unix = address instanceof UnixDomainSocketAddress;
+        try (ServerSocketChannel server = unix ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                                               : ServerSocketChannel.open()) {
+            // left behind by a server that was killed
+            if (unix)
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            server.bind(address);
+            for (int count = 0; ; count++) {
+                SocketChannel client = server.accept();
+                Thread connection = new Thread(() -> {
+                        try (client) {
+                            serve(Channels.newInputStream(client), Channels.newOutputStream(client));
+                        } catch (IOException | InterruptedException e) {
+                            System.err.println("Warning: connection failed: " + e.getMessage());
+                        }
+                    }, "amazed-connection-" + count);
+                connection.setDaemon(true);
+                connection.start();
+            }
+        } finally {
+            if (unix)
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+    }
+
+    /**
+     * Returns the latencies of the queries answered so far, one line
+     * per command.
+     *
+     * @return   the count, percentiles, and maximum of the latencies
+     *           of the queries of every command
+     */
+    public String stats()
+    {
+        StringBuilder stats = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry: latencies.entrySet())
+            stats.append(entry.getKey()).append(' ').append(entry.getValue().summary()).append('\n');
+        return stats.toString();
+    }
+
+    /**
+     * Releases the off-heap memory of the mazes, if any.
+     */
+    @Override
+    public void close()
+    {
+        for (Maze maze: mazes.values())
+            maze.close();
+    }
+
+    // write the replies, in order, until END; if writing fails, keep
+    // taking the replies, so that the reader is not blocked
+    private static void writeReplies(BlockingQueue<CompletableFuture<String>> replies,
+                                     OutputStream out)
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+        boolean failed = false;
+        try {
+            for (CompletableFuture<String> reply = replies.take(); reply != END;
+                 reply = replies.take()) {
+                String line;
+                try {
+                    line = reply.join();
+                } catch (CompletionException e) {
+                    line = "error " + e.getCause();
+                }
+                if (failed)
+                    continue;
+                try {
+                    writer.write(line);
+                    writer.write('\n');
+                    if (replies.isEmpty())
+                        writer.flush();
+                } catch (IOException e) {
+                    failed = true;
+                }
+            }
+            if (!failed)
+                writer.flush();
+        } catch (IOException | InterruptedException e) {
+            // the connection is gone, or the server is shutting down
+        }
+    }
+
+    // reply to query, read at time start, and record its latency
+    private String answer(String query, long start)
+    {
+        String[] words = query.trim().split("\\s+");
+        String reply;
+        try {
+            reply = execute(words);
+        } catch (IllegalArgumentException e) {
+            reply = "error " + e.getMessage();
+        } catch (RuntimeException e) {
+            // a failure of the maze or a solver: report it, and keep serving
+            reply = "error " + e;
+        }
+        LatencyHistogram histogram = latencies.get(words[0]);
+        if (histogram != null)
+            histogram.record(System.nanoTime() - start);
+        return reply;
+    }
+
+    private String execute(String[] words)
+    {
+        switch (words[0]) {
+        case "maps":
+            return "ok " + String.join(" ", mazes.keySet());
+        case "start":
+            return "ok " + maze(words, 2, 2).start();
+        case "id": {
+            Maze maze = maze(words, 4, 4);
+            int row = Integer.parseInt(words[2]), col = Integer.parseInt(words[3]);
+            if (row < 0 || row >= maze.rows() || col < 0 || col >= maze.cols())
+                throw new IllegalArgumentException("no cell at " + row + " " + col);
+            return "ok " + maze.cellId(row * maze.cols() + col);
+        }
+        case "distance":
+        case "reachable": {
+            Maze maze = maze(words, 3, Integer.MAX_VALUE);
+            int[] distances = new MultiStartSolver(maze).distances(ids(maze, words));
+            StringBuilder reply = new StringBuilder("ok");
+            for (int distance: distances) {
+                reply.append(' ');
+                if (words[0].equals("distance"))
+                    reply.append(distance);
+                else
+                    reply.append(distance != DistanceField.UNREACHABLE);
+            }
+            return reply.toString();
+        }
+        case "path": {
+            Maze maze = maze(words, 3, 3);
+            List<Integer> path = new MultiStartSolver(maze).paths(ids(maze, words)).get(0);
+            if (path == null)
+                return "none";
+            List<String> nodes = new ArrayList<>(path.size());
+            for (Integer id: path)
+                nodes.add(id.toString());
+            return "ok " + String.join(" ", nodes);
+        }
+        case "stats":
+            return "ok " + stats().trim().replace("\n", "; ");
+        default:
+            throw new IllegalArgumentException("unknown command " + words[0]);
+        }
+    }
+
+    // the maze named in words[1], if words has between min and max words
+    private Maze maze(String[] words, int min, int max)
+    {
+        if (words.length < min || words.length > max)
+            throw new IllegalArgumentException("wrong number of arguments");
+        Maze maze = mazes.get(words[1]);
+        if (maze == null)
+            throw new IllegalArgumentException("no map " + words[1]);
+        return maze;
+    }
+
+    // the node identifiers words[2], words[3], ...
+    private static int[] ids(Maze maze, String[] words)
+    {
+        int[] ids = new int[words.length - 2];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Integer.parseInt(words[i + 2]);
+            if (maze.cellIndex(ids[i]) < 0)
+                throw new IllegalArgumentException("no node " + ids[i]);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,102 @@
+package amazed.maze;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <code>Occupancy</code> keeps track of the cells where the players
+ * of a board are, with a count of players per cell and the cell of
+ * every player, both held in <code>AtomicIntegerArray</code>s.
+ * <p>
+ * Placing, moving, and removing a player takes constant time and is
+ * thread safe: it swaps the cell of the player and updates the counts
+ * of the cells it leaves and enters. Both arrays are split in chunks,
+ * allocated when a player first reaches them; thus, a board only
+ * pays for the regions its players visit, and the number of players
+ * need not be known in advance.
+ */
+
+class Occupancy
+{
+    // number of cells, and of players, per chunk
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    // cell of a player that is not on the board
+    static final int NOWHERE = -1;
+
+    // chunk --> number of players on each of its cells
+    private final AtomicReferenceArray<AtomicIntegerArray> counts;
+    // chunk --> cell of each of its players, or NOWHERE + 1 (that is,
+    // cells are shifted by one, so that a new chunk means NOWHERE)
+    private volatile AtomicIntegerArray[] cells = new AtomicIntegerArray[0];
+
+    // occupancy of a board with size cells
+    Occupancy(int size)
+    {
+        counts = new AtomicReferenceArray<>(((size - 1) >>> CHUNK_BITS) + 1);
+    }
+
+    // number of players on cell index
+    int count(int index)
+    {
+        AtomicIntegerArray chunk = counts.get(index >>> CHUNK_BITS);
+        return chunk == null ? 0 : chunk.get(index & CHUNK_MASK);
+    }
+
+    // cell index of player, or NOWHERE
+    int cellOf(int player)
+    {
+        AtomicIntegerArray[] chunks = cells;
+        int number = player >>> CHUNK_BITS;
+        if (number >= chunks.length || chunks[number] == null)
+            return NOWHERE;
+        return chunks[number].get(player & CHUNK_MASK) - 1;
+    }
+
+    // put player on cell index, or off the board if index is NOWHERE;
+    // return the previous cell of player
+    int move(int player, int index)
+    {
+        int old = playerChunk(player).getAndSet(player & CHUNK_MASK, index + 1) - 1;
+        if (old != index) {
+            if (old != NOWHERE)
+                countChunk(old).decrementAndGet(old & CHUNK_MASK);
+            if (index != NOWHERE)
+                countChunk(index).incrementAndGet(index & CHUNK_MASK);
+        }
+        return old;
+    }
+
+    private AtomicIntegerArray countChunk(int index)
+    {
+        int number = index >>> CHUNK_BITS;
+        AtomicIntegerArray chunk = counts.get(number);
+        if (chunk == null) {
+            counts.compareAndSet(number, null, new AtomicIntegerArray(1 << CHUNK_BITS));
+            chunk = counts.get(number);
+        }
+        return chunk;
+    }
+
+    private AtomicIntegerArray playerChunk(int player)
+    {
+        int number = player >>> CHUNK_BITS;
+        AtomicIntegerArray[] chunks = cells;
+        if (number < chunks.length && chunks[number] != null)
+            return chunks[number];
+        synchronized (this) {
+            chunks = cells;
+            if (number >= chunks.length) {
+                AtomicIntegerArray[] grown =
+                    new AtomicIntegerArray[Math.max(number + 1, 2 * chunks.length)];
+                System.arraycopy(chunks, 0, grown, 0, chunks.length);
+                chunks = grown;
+            }
+            if (chunks[number] == null)
+                chunks[number] = new AtomicIntegerArray(1 << CHUNK_BITS);
+            // publish the chunk with the volatile write
+            cells = chunks;
+            return chunks[number];
+        }
+    }
+}
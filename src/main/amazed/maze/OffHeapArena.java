@@ -0,0 +1,113 @@
+package amazed.maze;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>OffHeapArena</code> owns memory allocated outside of the Java
+ * heap, which the garbage collector neither scans nor moves, and
+ * releases all of it at once when it is closed.
+ * <p>
+ * A maze created with <code>BoardStorage.OFF_HEAP</code> allocates its
+ * tiles in an arena, and solvers allocate their visited sets and
+ * predecessor maps in the arena of the maze they search (see
+ * {@link Maze#offHeapArena()}); closing the maze closes the arena.
+ * Memory is allocated as direct byte buffers in native byte order.
+ * Visited sets and predecessor maps update their words atomically
+ * through <code>VarHandle</code> views of the buffers; an off-heap
+ * board reads and writes one byte per cell with the plain
+ * <code>get</code> and <code>put</code> of its buffer.
+ * When the arena is closed, the buffers are freed immediately if the
+ * runtime allows it, and by the garbage collector otherwise; in either
+ * case, none of the structures allocated in the arena may be used
+ * after <code>close</code> is called.
+ */
+
+public class OffHeapArena implements AutoCloseable
+{
+    // sun.misc.Unsafe.invokeCleaner, if available, to free a direct buffer
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // buffers are freed by the garbage collector
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private long allocated = 0;
+    private boolean closed = false;
+
+    // zeroed off-heap memory of bytes bytes, in native byte order
+    synchronized ByteBuffer allocate(long bytes)
+    {
+        if (closed)
+            throw new IllegalStateException("Arena is closed");
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Cannot allocate " + bytes + " bytes in a single buffer");
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+        buffers.add(buffer);
+        allocated += bytes;
+        return buffer;
+    }
+
+    /**
+     * Returns the number of bytes allocated in this arena and not yet
+     * released.
+     *
+     * @return   the number of allocated bytes
+     */
+    public synchronized long allocatedBytes()
+    {
+        return allocated;
+    }
+
+    /**
+     * Tests whether this arena has not been closed.
+     *
+     * @return   <code>true</code> if the memory of the arena can be used;
+     *           <code>false</code> otherwise
+     */
+    public synchronized boolean isOpen()
+    {
+        return !closed;
+    }
+
+    /**
+     * Releases all memory allocated in this arena. Closing an arena
+     * more than once has no effect.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+        if (INVOKE_CLEANER != null) {
+            for (ByteBuffer buffer: buffers) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                } catch (ReflectiveOperationException e) {
+                    // left to the garbage collector
+                }
+            }
+        }
+        buffers.clear();
+        allocated = 0;
+    }
+}
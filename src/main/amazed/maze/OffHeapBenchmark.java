@@ -0,0 +1,83 @@
+package amazed.maze;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import amazed.solver.SequentialSolver;
+
+/**
+ * <code>OffHeapBenchmark</code> compares the pressure that mazes put
+ * on the garbage collector depending on how they are stored. It keeps
+ * <code>COPIES</code> mazes of a map alive, stored as described by
+ * <code>STORAGE</code> (one of the constants of
+ * <code>BoardStorage</code>), solves each of them, and then allocates
+ * short-lived garbage while they stay reachable. It reports the
+ * number and total time of collections, the time of a full
+ * collection, and the heap used by the live mazes.
+ * <p>
+ * Usage: <code>java amazed.maze.OffHeapBenchmark MAP STORAGE [COPIES]</code>
+ */
+
+public class OffHeapBenchmark
+{
+    // bytes of short-lived garbage allocated per maze
+    private static final int CHURN = 64 << 20;
+
+    public static void main(String[] args)
+    {
+        if (args.length < 2) {
+            System.out.println("usage: java amazed.maze.OffHeapBenchmark MAP STORAGE [COPIES]");
+            System.exit(0);
+        }
+        BoardStorage storage = BoardStorage.valueOf(args[1].toUpperCase());
+        int copies = args.length >= 3 ? Integer.parseInt(args[2]) : 4;
+        long[] before = collections();
+        long start = System.nanoTime();
+        Maze[] mazes = new Maze[copies];
+        long solved = 0, sink = 0;
+        for (int i = 0; i < copies; i++) {
+            mazes[i] = new Maze(args[0], storage, i);
+            mazes[i].setDelay(-1);
+            List<Integer> path = new SequentialSolver(mazes[i]).compute();
+            if (path != null && mazes[i].isValidPath(path))
+                solved += 1;
+            mazes[i].removePlayers();
+            for (int allocated = 0; allocated < CHURN; allocated += 1 << 10)
+                sink += new byte[1 << 10].length;
+        }
+        long elapsed = System.nanoTime() - start;
+        long[] after = collections();
+        long fullStart = System.nanoTime();
+        System.gc();
+        long full = System.nanoTime() - fullStart;
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        long offHeap = 0;
+        for (Maze maze: mazes) {
+            if (maze.offHeapArena() != null)
+                offHeap += maze.offHeapArena().allocatedBytes();
+        }
+        System.out.printf("storage:         %s (%d mazes, %d solved, %d MB churned)%n",
+                          storage, copies, solved, sink >> 20);
+        System.out.printf("total time:      %.1f ms%n", elapsed / 1e6);
+        System.out.printf("collections:     %d (%d ms)%n",
+                          after[0] - before[0], after[1] - before[1]);
+        System.out.printf("full collection: %.1f ms%n", full / 1e6);
+        System.out.printf("heap used:       %.1f MB%n", heap / 1048576.0);
+        System.out.printf("off-heap:        %.1f MB%n", offHeap / 1048576.0);
+        for (Maze maze: mazes)
+            maze.close();
+    }
+
+    // number and total milliseconds of collections so far
+    private static long[] collections()
+    {
+        long count = 0, time = 0;
+        for (GarbageCollectorMXBean bean: ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return new long[] { count, time };
+    }
+}
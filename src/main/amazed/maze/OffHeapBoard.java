@@ -0,0 +1,114 @@
+package amazed.maze;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <code>OffHeapBoard</code> is a board whose tiles are stored outside
+ * of the Java heap, in an <code>OffHeapArena</code>.
+ * <p>
+ * Every cell takes one byte of the arena: the ordinal of its tile in
+ * the low three bits, and its mask of open directions in the next
+ * four. Solvers only read these bytes, so the board keeps no
+ * <code>Cell</code> object on the heap; <code>getCell</code> builds
+ * cells when they are requested. The map is read in blocks of rows, through a
+ * <code>LazyBoard</code>, so that loading does not build all cells
+ * at once either.
+ */
+
+class OffHeapBoard extends Board
+{
+    private static final Tile[] TILES = Tile.values();
+    private static final int TILE_BITS = 3;
+    private static final int TILE_MASK = (1 << TILE_BITS) - 1;
+
+    private final ByteBuffer cells;
+
+    // board from map filename, with node ids determined by idSeed, in arena
+    OffHeapBoard(String filename, long idSeed, OffHeapArena arena)
+    throws IOException
+    {
+        this(new LazyBoard(filename, LazyBoard.DEFAULT_BLOCK_ROWS, 1, idSeed), idSeed, arena);
+    }
+
+    private OffHeapBoard(LazyBoard source, long idSeed, OffHeapArena arena)
+    {
+        super(source.getRows(), source.getCols(), null, idSeed);
+        int nRows = getRows(), nCols = getCols();
+        cells = arena.allocate((long) nRows * nCols);
+        for (int row = 0; row < nRows; row++)
+            for (int col = 0; col < nCols; col++)
+                cells.put(row * nCols + col, (byte) source.getCell(row, col).getTile().ordinal());
+        for (int row = 0; row < nRows; row++) {
+            for (int col = 0; col < nCols; col++) {
+                int open = 0;
+                for (Direction direction: Direction.values()) {
+                    if (isAccessible(row + direction.getRowStep(), col + direction.getColStep()))
+                        open |= direction.bit();
+                }
+                int index = row * nCols + col;
+                cells.put(index, (byte) (cells.get(index) | (open << TILE_BITS)));
+            }
+        }
+        computeContentHash();
+        setGoals(source.getGoals());
+    }
+
+    @Override
+    Cell getCell(int row, int col)
+    {
+        int index = row * getCols() + col;
+        return new Cell(tile(index), getId(index));
+    }
+
+    @Override
+    void setCell(int row, int col, Cell cell)
+    {
+        int index = row * getCols() + col;
+        cells.put(index, (byte) ((cells.get(index) & ~TILE_MASK) | cell.getTile().ordinal()));
+    }
+
+    @Override
+    int getOpenDirections(int index)
+    {
+        return (cells.get(index) >>> TILE_BITS) & 0xf;
+    }
+
+    @Override
+    boolean isBrick(int index)
+    {
+        return tile(index) == Tile.BRICK;
+    }
+
+    @Override
+    boolean isAccessible(int row, int col)
+    {
+        if (!isOnBoard(row, col))
+            return false;
+        Tile tile = tile(row * getCols() + col);
+        return tile == Tile.EMPTY || tile == Tile.HEART;
+    }
+
+    // update the masks of the neighbors of the toggled cell
+    @Override
+    boolean toggleBrick(int index)
+    {
+        boolean accessible = super.toggleBrick(index);
+        int row = index / getCols(), col = index % getCols();
+        for (Direction direction: Direction.values()) {
+            int newRow = row + direction.getRowStep(), newCol = col + direction.getColStep();
+            if (isOnBoard(newRow, newCol)) {
+                int neighbor = newRow * getCols() + newCol;
+                int bit = direction.opposite().bit() << TILE_BITS;
+                int value = cells.get(neighbor);
+                cells.put(neighbor, (byte) (accessible ? value | bit : value & ~bit));
+            }
+        }
+        return accessible;
+    }
+
+    private Tile tile(int index)
+    {
+        return TILES[cells.get(index) & TILE_MASK];
+    }
+}
@@ -0,0 +1,136 @@
+package amazed.maze;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <code>PackedDirections</code> maps every cell of a maze to one of
+ * the four <code>Direction</code>s, using two bits per cell packed in
+ * a <code>long[]</code> indexed by cell index (see
+ * {@link Maze#cellIndex(int)}), or in the same layout in an
+ * <code>OffHeapArena</code>.
+ * <p>
+ * Solvers use it to record, for every visited node, the direction of
+ * the neighbor it was reached from. This takes a quarter of a byte
+ * per cell, instead of the boxed key, boxed value and entry that a
+ * <code>Map&lt;Integer, Integer&gt;</code> spends on every visited
+ * node. The packing has no "unset" value: a cell that was never
+ * written maps to <code>Direction.NORTH</code>.
+ * <p>
+ * Method <code>set</code> is meant for a single thread. Method
+ * <code>setAtomic</code> can be called by several threads at once:
+ * since 32 cells share every word, it updates the word with a
+ * compare-and-set loop, so that concurrent writes to different cells
+ * do not overwrite each other.
+ */
+
+public class PackedDirections
+{
+    private static final VarHandle WORDS =
+        MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle BUFFER_WORDS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // exactly one of words and buffer is not null
+    private final long[] words;
+    private final ByteBuffer buffer;
+    private final int size;
+
+    /**
+     * Creates a map from <code>size</code> cells to directions.
+     *
+     * @param size   the number of cells
+     */
+    public PackedDirections(int size)
+    {
+        this.size = size;
+        this.words = new long[(int) (((long) size + 31) >>> 5)];
+        this.buffer = null;
+    }
+
+    /**
+     * Creates a map from <code>size</code> cells to directions in an
+     * arena.
+     *
+     * @param size    the number of cells
+     * @param arena   the arena where the map is allocated
+     */
+    public PackedDirections(int size, OffHeapArena arena)
+    {
+        this.size = size;
+        this.words = null;
+        this.buffer = arena.allocate((((long) size + 31) >>> 5) << 3);
+    }
+
+    /**
+     * Returns the number of cells in the map.
+     *
+     * @return   the number of cells
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the direction associated with a cell.
+     *
+     * @param index   a cell index in <code>[0, size())</code>
+     * @return        the direction last set for <code>index</code>
+     */
+    public Direction get(int index)
+    {
+        int i = index >>> 5;
+        long word = buffer == null
+            ? (long) WORDS.getOpaque(words, i)
+            : (long) BUFFER_WORDS.getOpaque(buffer, i << 3);
+        return DIRECTIONS[(int) (word >>> shift(index)) & 3];
+    }
+
+    /**
+     * Associates a direction with a cell. Not thread safe.
+     *
+     * @param index       a cell index in <code>[0, size())</code>
+     * @param direction   the direction associated with <code>index</code>
+     */
+    public void set(int index, Direction direction)
+    {
+        int i = index >>> 5, shift = shift(index);
+        long bits = (long) direction.ordinal() << shift;
+        if (buffer == null)
+            words[i] = (words[i] & ~(3L << shift)) | bits;
+        else
+            buffer.putLong(i << 3, (buffer.getLong(i << 3) & ~(3L << shift)) | bits);
+    }
+
+    /**
+     * Associates a direction with a cell. Thread safe.
+     *
+     * @param index       a cell index in <code>[0, size())</code>
+     * @param direction   the direction associated with <code>index</code>
+     */
+    public void setAtomic(int index, Direction direction)
+    {
+        int i = index >>> 5, shift = shift(index);
+        long bits = (long) direction.ordinal() << shift;
+        long word;
+        if (buffer == null) {
+            do {
+                word = (long) WORDS.getVolatile(words, i);
+            } while (!WORDS.compareAndSet(words, i, word, (word & ~(3L << shift)) | bits));
+        } else {
+            do {
+                word = (long) BUFFER_WORDS.getVolatile(buffer, i << 3);
+            } while (!BUFFER_WORDS.compareAndSet(buffer, i << 3, word, (word & ~(3L << shift)) | bits));
+        }
+    }
+
+    private static int shift(int index)
+    {
+        return (index & 31) << 1;
+    }
+}
@@ -0,0 +1,183 @@
+package amazed.maze;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <code>PathValidator</code> checks that sequences of node identifiers
+ * are connected paths from the start node to a goal.
+ * <p>
+ * Every step is checked without allocating: the identifiers of two
+ * consecutive nodes are mapped to cell indexes, which must differ by
+ * exactly one row or one column, and the direction between them must
+ * be open in the board's mask of open directions. Paths longer than
+ * <code>CHUNK</code> steps are split into chunks that are validated
+ * in parallel by fork/join tasks; batches of paths are split among
+ * tasks in the same way.
+ */
+
+class PathValidator
+{
+    // number of steps validated sequentially by a single task
+    static final int CHUNK = 1 << 13;
+
+    private final Board board;
+    private final int start;
+
+    PathValidator(Board board, int start)
+    {
+        this.board = board;
+        this.start = start;
+    }
+
+    // is path a connected path from start to a goal?
+    boolean isValid(List<Integer> path)
+    {
+        int size = path.size();
+        if (size == 0)
+            return false;
+        if (size <= CHUNK)
+            return isValidSequential(path);
+        int[] ids = new int[size];
+        int i = 0;
+        for (int id: path)
+            ids[i++] = id;
+        return ids[0] == start && hasGoal(ids[size - 1])
+            && new StepsTask(ids, 1, size).invoke();
+    }
+
+    // is path a connected path from start to a goal? every move is
+    // checked against the open directions of the cell it leaves
+    boolean isValid(CompactPath path)
+    {
+        int cell = path.start();
+        if (board.getIndex(start) != cell)
+            return false;
+        for (int i = 0; i < path.length(); i++) {
+            Direction move = path.move(i);
+            if ((board.getOpenDirections(cell) & move.bit()) == 0)
+                return false;
+            cell += move.getRowStep() * board.getCols() + move.getColStep();
+        }
+        return board.isHeart(cell);
+    }
+
+    // validity of every path in paths, in the same order
+    boolean[] areValid(List<? extends List<Integer>> paths)
+    {
+        boolean[] result = new boolean[paths.size()];
+        new BatchTask(paths, result, 0, paths.size()).invoke();
+        return result;
+    }
+
+    private boolean isValidSequential(List<Integer> path)
+    {
+        int prev = -1;
+        for (int id: path) {
+            int curr = board.getIndex(id);
+            if (curr < 0)
+                return false;
+            if (prev < 0) {
+                if (id != start)
+                    return false;
+            } else if (!isStep(prev, curr))
+                return false;
+            prev = curr;
+        }
+        return board.isHeart(prev);
+    }
+
+    private boolean hasGoal(int id)
+    {
+        int index = board.getIndex(id);
+        return index >= 0 && board.isHeart(index);
+    }
+
+    // can a player move from cell index from to the adjacent cell index to?
+    private boolean isStep(int from, int to)
+    {
+        int cols = board.getCols();
+        int rowDifference = to / cols - from / cols;
+        int colDifference = to % cols - from % cols;
+        Direction direction;
+        if (colDifference == 0 && rowDifference == -1)
+            direction = Direction.NORTH;
+        else if (colDifference == 0 && rowDifference == 1)
+            direction = Direction.SOUTH;
+        else if (rowDifference == 0 && colDifference == -1)
+            direction = Direction.WEST;
+        else if (rowDifference == 0 && colDifference == 1)
+            direction = Direction.EAST;
+        else
+            return false;
+        return (board.getOpenDirections(from) & direction.bit()) != 0;
+    }
+
+    // validates steps ids[i - 1] -> ids[i] for from <= i < to
+    private class StepsTask extends RecursiveTask<Boolean>
+    {
+        private final int[] ids;
+        private final int from;
+        private final int to;
+
+        StepsTask(int[] ids, int from, int to)
+        {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Boolean compute()
+        {
+            if (to - from <= CHUNK) {
+                int prev = board.getIndex(ids[from - 1]);
+                if (prev < 0)
+                    return false;
+                for (int i = from; i < to; i++) {
+                    int curr = board.getIndex(ids[i]);
+                    if (curr < 0 || !isStep(prev, curr))
+                        return false;
+                    prev = curr;
+                }
+                return true;
+            }
+            int middle = (from + to) >>> 1;
+            StepsTask left = new StepsTask(ids, from, middle);
+            left.fork();
+            boolean right = new StepsTask(ids, middle, to).compute();
+            return left.join() && right;
+        }
+    }
+
+    // validates paths.get(i) into result[i] for from <= i < to
+    private class BatchTask extends RecursiveAction
+    {
+        private final List<? extends List<Integer>> paths;
+        private final boolean[] result;
+        private final int from;
+        private final int to;
+
+        BatchTask(List<? extends List<Integer>> paths, boolean[] result, int from, int to)
+        {
+            this.paths = paths;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= 1) {
+                if (from < to)
+                    result[from] = isValid(paths.get(from));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BatchTask(paths, result, from, middle),
+                      new BatchTask(paths, result, middle, to));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package amazed.maze;
+
+/**
+ * <code>Phase</code> enumerates the parts of solving a maze whose
+ * latencies are recorded in the <code>Timings</code> of the maze.
+ */
+
+public enum Phase
+{
+    /**
+     * Reading the map file, when the maze is created.
+     */
+    PARSE,
+
+    /**
+     * Building the structures of a solver, or of the maze, before
+     * they are searched: creating a solver, computing a distance
+     * field, or building a cluster graph.
+     */
+    PREPROCESS,
+
+    /**
+     * Running a solver, including the reconstruction of the path it
+     * finds.
+     */
+    SEARCH,
+
+    /**
+     * Reconstructing the path from the start node to a goal, once the
+     * goal is found.
+     */
+    PATH,
+
+    /**
+     * Checking that a path is a valid solution.
+     */
+    VALIDATION,
+
+    /**
+     * A whole solve: searching, or looking up a cached solution, and
+     * validating the path.
+     */
+    SOLVE,
+
+    /**
+     * Running one of the tasks of a fork/join solver, until it returns.
+     */
+    TASK
+}
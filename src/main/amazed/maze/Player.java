@@ -1,6 +1,7 @@
 package amazed.maze;
 
 import java.awt.Image;
+import javax.swing.Icon;
 
 
 public class Player
@@ -8,10 +9,11 @@ public class Player
 {
     private final int id;
     private final String name;
-    private final Image image;
+    // name of the sprite of the player, loaded when it is displayed
+    private final String imageName;
 
+    // the position of the player is kept by the board
     private Board board = null;
-    private int row, col;
 
     private final String playerFileName = "player";
 
@@ -19,12 +21,7 @@ public class Player
     {
         this.id = id;
         this.name = name;
-        Image image = ImageFactory.getImage(playerFileName + Integer.toString(imageId));
-        if (image == null)
-            image = ImageFactory.getImage(playerFileName);
-        this.image = image;
-        this.row = -1;
-        this.col = -1;
+        this.imageName = playerFileName + Integer.toString(imageId);
     }
 
     Player(int id, String name)
@@ -37,8 +34,6 @@ public class Player
     {
         if (this.board == null && board.isOnBoard(row, col)) {
             this.board = board;
-            this.row = row;
-            this.col = col;
             board.register(this, row, col);
         }
     }
@@ -62,27 +57,18 @@ public class Player
 
     Position getPosition()
     {
-        return new Position(this.getRow(), this.getCol());
+        Position position = board == null ? null : board.getPosition(this);
+        return position == null ? new Position(-1, -1) : position;
     }
 
     int getRow()
     {
-        return row;
+        return getPosition().getRow();
     }
 
     int getCol()
     {
-        return col;
-    }
-
-    void setRow(int row)
-    {
-        this.row = row;
-    }
-
-    void setCol(int col)
-    {
-        this.col = col;
+        return getPosition().getCol();
     }
 
     Character getText()
@@ -92,13 +78,20 @@ public class Player
 
     Image getImage()
     {
-        return image;
+        Image image = ImageFactory.getImage(imageName);
+        return image == null ? ImageFactory.getImage(playerFileName) : image;
+    }
+
+    Icon getIcon()
+    {
+        Icon icon = ImageFactory.getIcon(imageName);
+        return icon == null ? ImageFactory.getIcon(playerFileName) : icon;
     }
 
     // move player by one node in given direction
     void move(Direction direction)
     {
-        Position newPosition = board.move(new Position(row, col), direction);
+        Position newPosition = board.move(getPosition(), direction);
         if (board != null && newPosition != null)
             board.move(this, newPosition.getRow(), newPosition.getCol());
     }
@@ -0,0 +1,76 @@
+package amazed.maze;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import amazed.solver.ForkJoinSolver;
+
+/**
+ * <code>ScalingBenchmark</code> measures how the parallel parts of
+ * the application scale with the number of worker threads. For every
+ * parallelism from 1 to the number of available processors (or to
+ * <code>MAX_PARALLELISM</code>), it runs a <code>ForkJoinSolver</code>
+ * search and the computation of the distance field of a map in a
+ * pool created by {@link Amazed#newPool}, and reports the average wall
+ * time, the speedup over one worker, and the efficiency (speedup per
+ * worker).
+ * <p>
+ * Usage: <code>java amazed.maze.ScalingBenchmark MAP [ROUNDS] [MAX_PARALLELISM]</code>
+ */
+
+public class ScalingBenchmark
+{
+    public static void main(String[] args)
+    {
+        if (args.length < 1) {
+            System.out.println("usage: java amazed.maze.ScalingBenchmark MAP [ROUNDS] [MAX_PARALLELISM]");
+            System.exit(0);
+        }
+        int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+        int maxParallelism = args.length >= 3
+            ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Maze maze = new Maze(args[0]);
+        maze.setDelay(-1);
+        System.out.printf("%-15s %11s %12s %9s %10s%n",
+                          "workload", "parallelism", "ms per run", "speedup", "efficiency");
+        report("parallel solver", rounds, maxParallelism, () -> {
+                List<Integer> path = new ForkJoinSolver(maze).compute();
+                maze.removePlayers();
+                return path;
+            });
+        report("distance field", rounds, maxParallelism,
+               () -> DistanceField.compute(maze.getBoard()));
+    }
+
+    private interface Workload
+    {
+        Object run();
+    }
+
+    private static void report(String name, int rounds, int maxParallelism, Workload workload)
+    {
+        // warm up with all workers before timing
+        ForkJoinPool warmUp = Amazed.newPool(maxParallelism, "amazed-bench", false, null);
+        for (int i = 0; i < rounds; i++)
+            warmUp.invoke(ForkJoinTask.adapt(workload::run));
+        warmUp.shutdown();
+        double base = 0;
+        for (int parallelism = 1; parallelism <= maxParallelism; parallelism++) {
+            ForkJoinPool pool = Amazed.newPool(parallelism, "amazed-bench", false, null);
+            long total = 0;
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                pool.invoke(ForkJoinTask.adapt(workload::run));
+                total += System.nanoTime() - start;
+            }
+            pool.shutdown();
+            double time = total / 1e6 / rounds;
+            if (parallelism == 1)
+                base = time;
+            double speedup = base / time;
+            System.out.printf("%-15s %11d %12.3f %9.2f %10.2f%n",
+                              name, parallelism, time, speedup, speedup / parallelism);
+        }
+    }
+}
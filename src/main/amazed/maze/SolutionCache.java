@@ -0,0 +1,274 @@
+package amazed.maze;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <code>SolutionCache</code> remembers the solutions of mazes, so
+ * that solving the same map again does not require a new search.
+ * <p>
+ * Solutions are keyed by {@link Maze#contentHash()}, which only
+ * depends on the tiles of the map, and are stored as sequences of
+ * cell indexes rather than node identifiers; hence, a cached solution
+ * remains valid when the same map is loaded again with different
+ * random identifiers. A maze without solution is cached as an empty
+ * sequence.
+ * <p>
+ * The cache has two tiers: an in-memory tier, which evicts the least
+ * recently used solutions when the total number of cached cells
+ * exceeds a bound; and an optional on-disk tier, with one file per
+ * solution in a given directory, which is never evicted. The cache
+ * counts hits in each tier and misses. All methods are thread safe.
+ */
+
+public class SolutionCache
+{
+    /**
+     * Default bound on the total number of cells of the solutions
+     * kept in memory.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 22;
+
+    private static final String SUFFIX = ".path";
+
+    private final long capacity;
+    private final File directory;
+    private long size = 0;
+
+    private long memoryHits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+
+    // least recently used first
+    private final LinkedHashMap<Key, int[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Creates a cache with only an in-memory tier.
+     *
+     * @param capacity   the maximum total number of cells of the
+     *                   solutions kept in memory
+     */
+    public SolutionCache(long capacity)
+    {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a cache with an in-memory tier and an on-disk tier.
+     *
+     * @param capacity    the maximum total number of cells of the
+     *                    solutions kept in memory
+     * @param directory   the directory of the on-disk tier, created
+     *                    if it does not exist; if <code>null</code>,
+     *                    the cache has no on-disk tier
+     */
+    public SolutionCache(long capacity, File directory)
+    {
+        this.capacity = capacity;
+        this.directory = directory;
+        if (directory != null)
+            directory.mkdirs();
+    }
+
+    /**
+     * Returns the cached solution of a maze.
+     *
+     * @param maze   a maze
+     * @return       the cell indexes of the cached path from the
+     *               start to a goal of <code>maze</code>; an empty array
+     *               if <code>maze</code> is cached as having no
+     *               solution; <code>null</code> if <code>maze</code>
+     *               is not in the cache
+     */
+    public synchronized int[] get(Maze maze)
+    {
+        Key key = new Key(maze);
+        int[] cells = memory.get(key);
+        if (cells != null) {
+            memoryHits += 1;
+            return cells;
+        }
+        cells = read(key);
+        if (cells != null) {
+            diskHits += 1;
+            putInMemory(key, cells);
+            return cells;
+        }
+        misses += 1;
+        return null;
+    }
+
+    /**
+     * Caches the solution of a maze.
+     *
+     * @param maze   a maze
+     * @param path   the list of node identifiers of a path from the
+     *               start to a goal of <code>maze</code>;
+     *               <code>null</code> if <code>maze</code> has no
+     *               solution
+     */
+    public synchronized void put(Maze maze, List<Integer> path)
+    {
+        Key key = new Key(maze);
+        int[] cells = new int[path == null ? 0 : path.size()];
+        int i = 0;
+        if (path != null)
+            for (int id: path)
+                cells[i++] = maze.cellIndex(id);
+        putInMemory(key, cells);
+        write(key, cells);
+    }
+
+    /**
+     * Returns the number of lookups answered by the in-memory tier.
+     *
+     * @return   the number of in-memory hits
+     */
+    public synchronized long memoryHits()
+    {
+        return memoryHits;
+    }
+
+    /**
+     * Returns the number of lookups answered by the on-disk tier.
+     *
+     * @return   the number of on-disk hits
+     */
+    public synchronized long diskHits()
+    {
+        return diskHits;
+    }
+
+    /**
+     * Returns the number of lookups that found no cached solution.
+     *
+     * @return   the number of misses
+     */
+    public synchronized long misses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of lookups answered by either tier.
+     *
+     * @return   the hit ratio in <code>[0, 1]</code>; <code>0</code>
+     *           if there have been no lookups
+     */
+    public synchronized double hitRatio()
+    {
+        long lookups = memoryHits + diskHits + misses;
+        return lookups == 0 ? 0 : (double) (memoryHits + diskHits) / lookups;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("solution cache: %d memory hits, %d disk hits, %d misses"
+                             + " (hit ratio %.1f%%), %d solutions in memory",
+                             memoryHits, diskHits, misses, 100 * hitRatio(), memory.size());
+    }
+
+    private void putInMemory(Key key, int[] cells)
+    {
+        int[] old = memory.put(key, cells);
+        if (old != null)
+            size -= old.length;
+        size += cells.length;
+        Iterator<Map.Entry<Key, int[]>> eldest = memory.entrySet().iterator();
+        while (size > capacity && eldest.hasNext()) {
+            size -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    private int[] read(Key key)
+    {
+        if (directory == null)
+            return null;
+        File file = key.file(directory);
+        if (!file.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != key.rows || in.readInt() != key.cols)
+                return null;
+            int[] cells = new int[in.readInt()];
+            for (int i = 0; i < cells.length; i++)
+                cells[i] = in.readInt();
+            return cells;
+        } catch (IOException e) {
+            System.err.println("Warning: cannot read cached solution " + file);
+            return null;
+        }
+    }
+
+    private void write(Key key, int[] cells)
+    {
+        if (directory == null)
+            return;
+        File file = key.file(directory);
+        File temporary = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(key.rows);
+            out.writeInt(key.cols);
+            out.writeInt(cells.length);
+            for (int index: cells)
+                out.writeInt(index);
+        } catch (IOException e) {
+            System.err.println("Warning: cannot write cached solution " + file);
+            temporary.delete();
+            return;
+        }
+        if (!temporary.renameTo(file))
+            temporary.delete();
+    }
+
+    // dimensions and content hash of a maze
+    private static class Key
+    {
+        private final long hash;
+        private final int rows;
+        private final int cols;
+
+        Key(Maze maze)
+        {
+            this.hash = maze.contentHash();
+            this.rows = maze.rows();
+            this.cols = maze.cols();
+        }
+
+        File file(File directory)
+        {
+            return new File(directory, String.format("%016x", hash) + SUFFIX);
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (other == this)
+                return true;
+            if (!(other instanceof Key))
+                return false;
+            Key otherKey = (Key) other;
+            return hash == otherKey.hash && rows == otherKey.rows && cols == otherKey.cols;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(hash);
+        }
+    }
+}
@@ -1,31 +1,37 @@
 package amazed.maze;
 
 import java.awt.Image;
+import javax.swing.Icon;
 
 
 public enum Tile
 {
-    EMPTY("empty"),
-    BRICK("brick"),
-    SOLID("solid"),
-    MARKED("marked"),
-    FOUND("found"),
-    HEART("heart");
+    EMPTY("empty", '.'),
+    BRICK("brick", '*'),
+    SOLID("solid", '#'),
+    MARKED("marked", '+'),
+    FOUND("found", '?'),
+    HEART("heart", 'v');
 
     private final String name;
-    private final Image image;
-    private final Character text;
+    // character of the tile in map files and printed boards
+    private final char text;
 
-    Tile(String name)
+    Tile(String name, char text)
     {
         this.name = name;
-        this.image = ImageFactory.getImage(this.name);
-        this.text = ImageFactory.getText(this.name);
+        this.text = text;
     }
 
+    // images are only loaded when a tile is displayed
     Image getImage()
     {
-        return image;
+        return ImageFactory.getImage(name);
+    }
+
+    Icon getIcon()
+    {
+        return ImageFactory.getIcon(name);
     }
 
     Character getText()
@@ -35,6 +41,6 @@ public enum Tile
 
     char getChar()
     {
-        return text.charValue();
+        return text;
     }
 }
@@ -0,0 +1,108 @@
+package amazed.maze;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <code>Timings</code> records the latencies of the phases of solving
+ * a maze (see <code>Phase</code>), in a <code>LatencyHistogram</code>
+ * per phase. Every maze has its own timings, which accumulate over
+ * all the solves of the maze, and which solvers update, from any
+ * thread, as they run.
+ * <p>
+ * A phase is timed by reading <code>System.nanoTime()</code> when it
+ * starts and passing that value to <code>record</code> when it ends.
+ */
+
+public class Timings
+{
+    // phase --> its latencies; read-only after construction
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+
+    /**
+     * Creates timings where no latency is recorded.
+     */
+    public Timings()
+    {
+        for (Phase phase: Phase.values())
+            histograms.put(phase, new LatencyHistogram());
+    }
+
+    /**
+     * Records the latency of a phase that started at a given time.
+     *
+     * @param phase        the phase that ends
+     * @param startNanos   the value of <code>System.nanoTime()</code>
+     *                     when the phase started
+     */
+    public void record(Phase phase, long startNanos)
+    {
+        histograms.get(phase).recordSince(startNanos);
+    }
+
+    /**
+     * Returns the latencies of a phase.
+     *
+     * @param phase   a phase of solving a maze
+     * @return        the histogram of the latencies of <code>phase</code>
+     */
+    public LatencyHistogram histogram(Phase phase)
+    {
+        return histograms.get(phase);
+    }
+
+    /**
+     * Returns the percentiles of the latencies of the phases with at
+     * least one recorded latency, one line per phase.
+     *
+     * @return   the summary of the latencies of every phase
+     */
+    public String summary()
+    {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<Phase, LatencyHistogram> entry: histograms.entrySet()) {
+            if (entry.getValue().count() > 0)
+                summary.append(String.format(Locale.ROOT, "%-10s %s%n", name(entry.getKey()),
+                                             entry.getValue().summary()));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Writes the distribution of the latencies of every phase with at
+     * least one recorded latency to file <code>PHASE.hgrm</code> in a
+     * directory, in the format of <code>LatencyHistogram.write</code>,
+     * so that runs of different builds can be compared with the
+     * plotting tools of HdrHistogram.
+     *
+     * @param directory   the directory of the files, which is created if
+     *                    it does not exist
+     * @throws IOException   if a file cannot be written
+     */
+    public void write(File directory)
+    throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("cannot create directory " + directory);
+        for (Map.Entry<Phase, LatencyHistogram> entry: histograms.entrySet()) {
+            if (entry.getValue().count() > 0) {
+                File file = new File(directory, name(entry.getKey()) + ".hgrm");
+                try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+                    entry.getValue().write(out);
+                    if (out.checkError())
+                        throw new IOException("cannot write " + file);
+                }
+            }
+        }
+    }
+
+    private static String name(Phase phase)
+    {
+        return phase.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,213 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Direction;
+import amazed.maze.Maze;
+import amazed.maze.Phase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <code>BeamSearchSolver</code> implements a solver for
+ * <code>Maze</code> objects using beam search: a breadth-first search
+ * that, at every level, keeps only the <em>width</em> nodes closest
+ * to a goal, by the estimate of <code>GoalDistance</code>, and
+ * discards the others.
+ * <p>
+ * The solver keeps no set of visited nodes: a node is not reached
+ * again from the next level only if it is in one of the two previous
+ * levels. Its memory grows with the width times the number of levels,
+ * which it keeps to reconstruct the path, not with the number of nodes
+ * reached. The price is completeness: the search may discard all the
+ * nodes that lead to a goal, and then fail, or wander until it has
+ * gone through as many levels as there are cells; and the path it
+ * finds need not be a shortest one. A wider beam makes both less
+ * likely.
+ * <p>
+ * The nodes of a level are expanded in parallel by fork/join tasks,
+ * each handling a range of nodes.
+ */
+
+public class BeamSearchSolver extends SequentialSolver {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // number of nodes expanded sequentially by a single task
+    private static final int NODES_PER_TASK = 256;
+
+    // maximum number of nodes in a level
+    private final int width;
+    // nodes expanded by the last search
+    private long expanded;
+    // cell indexes of the goals
+    private int[] goals;
+    private GoalDistance goalDistance;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, keeping at most <code>width</code> nodes
+     * per level.
+     *
+     * @param maze    the maze to be searched
+     * @param width   the maximum number of nodes in a level
+     * @throws IllegalArgumentException   if <code>width</code> is not positive
+     */
+    public BeamSearchSolver(Maze maze, int width) {
+        super(maze);
+        if (width <= 0)
+            throw new IllegalArgumentException("Beam width must be positive: " + width);
+        this.width = width;
+    }
+
+    /**
+     * Reads the list of goals. <code>visited</code>,
+     * <code>predecessor</code>, and <code>frontier</code> are not used.
+     */
+    @Override
+    protected void initStructures() {
+        goals = maze.goals();
+        goalDistance = new GoalDistance(maze);
+    }
+
+    /**
+     * Returns the number of nodes expanded by the last search.
+     *
+     * @return   the number of expanded nodes
+     */
+    @Override
+    public long expanded() {
+        return expanded;
+    }
+
+    /**
+     * Returns <code>false</code>: the beam may discard all the nodes
+     * that lead to a goal.
+     *
+     * @return   <code>false</code>
+     */
+    @Override
+    public boolean isComplete() {
+        return false;
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, all goals are unreachable, or the beam missed them), the
+     * method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute() {
+        expanded = 0;
+        // no goal to reach
+        if (goals.length == 0)
+            return null;
+        int player = maze.newPlayer(start);
+        // levels.get(l)[i] is the cell of node i of level l, and
+        // parents.get(l)[i] the index of its parent in level l - 1
+        List<int[]> levels = new ArrayList<>();
+        List<int[]> parents = new ArrayList<>();
+        int[] level = { maze.cellIndex(start) };
+        int[] parent = { -1 };
+        Set<Integer> previous = new HashSet<>();
+        for (int depth = 0; level.length > 0 && depth < maze.rows() * maze.cols(); depth++) {
+            levels.add(level);
+            parents.add(parent);
+            expanded += level.length;
+            for (int i = 0; i < level.length; i++) {
+                if (maze.hasGoalAt(level[i])) {
+                    List<Integer> path = pathTo(levels, parents, i);
+                    maze.move(player, path.get(path.size() - 1));
+                    return path;
+                }
+            }
+            // the successors of node i are candidates[i * 4 ...]
+            int[] candidates = new int[level.length * DIRECTIONS.length];
+            new ExpandTask(level, candidates, 0, level.length).invoke();
+            Set<Integer> current = new HashSet<>();
+            for (int cell: level)
+                current.add(cell);
+            // the best candidates, sorted by distance then position
+            long[] ranked = new long[candidates.length];
+            int count = 0;
+            for (int c = 0; c < candidates.length; c++) {
+                int cell = candidates[c];
+                if (cell >= 0 && !current.contains(cell) && !previous.contains(cell))
+                    ranked[count++] = ((long) goalDistance.estimate(cell) << 32) | c;
+            }
+            Arrays.sort(ranked, 0, count);
+            Set<Integer> kept = new HashSet<>();
+            int[] nextLevel = new int[Math.min(count, width)];
+            int[] nextParent = new int[nextLevel.length];
+            int size = 0;
+            for (int r = 0; r < count && size < nextLevel.length; r++) {
+                int c = (int) ranked[r];
+                if (kept.add(candidates[c])) {
+                    nextLevel[size] = candidates[c];
+                    nextParent[size] = c / DIRECTIONS.length;
+                    size += 1;
+                }
+            }
+            previous = current;
+            level = Arrays.copyOf(nextLevel, size);
+            parent = Arrays.copyOf(nextParent, size);
+        }
+        return null;
+    }
+
+    // path to node i of the last level, following the parents
+    private List<Integer> pathTo(List<int[]> levels, List<int[]> parents, int i) {
+        long begin = System.nanoTime();
+        int last = levels.size() - 1;
+        CompactPath.Builder path = CompactPath.Builder.to(maze, levels.get(last)[i]);
+        for (int depth = last; depth > 0; depth--) {
+            i = parents.get(depth)[i];
+            path.add(levels.get(depth - 1)[i]);
+        }
+        maze.timings().record(Phase.PATH, begin);
+        return path.build().asList();
+    }
+
+    // fills candidates with the open neighbors of the nodes of level
+    // in [from, to), and -1 where a node has no neighbor
+    private class ExpandTask extends RecursiveAction {
+        private final int[] level;
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+
+        ExpandTask(int[] level, int[] candidates, int from, int to) {
+            this.level = level;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > NODES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ExpandTask(level, candidates, from, middle),
+                          new ExpandTask(level, candidates, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int open = maze.openDirections(level[i]);
+                for (int d = 0; d < DIRECTIONS.length; d++) {
+                    candidates[i * DIRECTIONS.length + d] = (open & DIRECTIONS[d].bit()) != 0
+                        ? maze.step(level[i], DIRECTIONS[d]) : -1;
+                }
+            }
+        }
+    }
+}
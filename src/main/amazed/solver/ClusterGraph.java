@@ -0,0 +1,411 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Direction;
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <code>ClusterGraph</code> is the abstract graph used by
+ * hierarchical path-finding (HPA*) on a <code>Maze</code>.
+ * <p>
+ * The grid of the maze is partitioned into square clusters of
+ * <code>clusterSize</code> by <code>clusterSize</code> cells. Wherever
+ * two adjacent clusters are connected, the middle of every maximal
+ * run of open cells along their border becomes an entrance: a pair of
+ * abstract nodes, one on each side, joined by an edge of length one.
+ * When the graph is built, a breadth-first search restricted to each
+ * cluster &mdash; run in parallel for all clusters &mdash; connects
+ * the entrances of the cluster with edges as long as the shortest
+ * paths between them inside the cluster, and records the distance
+ * from every entrance to the nearest goal in its cluster.
+ * <p>
+ * Method <code>path</code> searches the small abstract graph, and
+ * then refines the abstract path into a path of adjacent cells by
+ * searching again inside the clusters it crosses. The refined path is
+ * built as a <code>CompactPath</code>, and returned as its list of
+ * node identifiers, which {@link amazed.maze.Maze#isValidPath(List)}
+ * accepts; it is not necessarily a shortest one.
+ */
+
+public class ClusterGraph
+{
+    /**
+     * Default number of cells along the side of a cluster.
+     */
+    public static final int DEFAULT_CLUSTER_SIZE = 32;
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // number of clusters whose edges are computed by a single task
+    private static final int CLUSTERS_PER_TASK = 16;
+
+    private final Maze maze;
+    private final int rows;
+    private final int cols;
+    private final int clusterSize;
+    private final int clusterCols;
+
+    // abstract node --> cell index of the node
+    private int[] nodeCell;
+    // abstract node --> pairs (adjacent node, length of the edge)
+    private int[][] edges;
+    // abstract node --> distance to the nearest goal in its cluster
+    private int[] goalDistance;
+    // cluster --> abstract nodes in the cluster
+    private int[][] clusterNodes;
+
+    /**
+     * Builds the abstract graph of <code>maze</code> with clusters of
+     * default size.
+     *
+     * @param maze   the maze to be abstracted
+     */
+    public ClusterGraph(Maze maze)
+    {
+        this(maze, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Builds the abstract graph of <code>maze</code>.
+     *
+     * @param maze          the maze to be abstracted
+     * @param clusterSize   the number of cells along the side of a cluster
+     */
+    public ClusterGraph(Maze maze, int clusterSize)
+    {
+        if (clusterSize <= 0)
+            throw new IllegalArgumentException("cluster size must be positive: " + clusterSize);
+        this.maze = maze;
+        this.rows = maze.rows();
+        this.cols = maze.cols();
+        this.clusterSize = clusterSize;
+        this.clusterCols = (cols + clusterSize - 1) / clusterSize;
+        int clusterRows = (rows + clusterSize - 1) / clusterSize;
+        findEntrances(clusterRows * clusterCols);
+        new ClusterTask(0, clusterNodes.length).invoke();
+    }
+
+    /**
+     * Returns the number of abstract nodes in the graph.
+     *
+     * @return   the number of entrance nodes
+     */
+    public int nodes()
+    {
+        return nodeCell.length;
+    }
+
+    /**
+     * Searches for and returns a path, as a list of node identifiers,
+     * that goes from a given node to a goal node in the maze.
+     *
+     * @param from   the identifier of the node where the path starts
+     * @return       the list of node identifiers from <code>from</code> to
+     *               a goal node in the maze; <code>null</code> if no goal
+     *               can be reached from <code>from</code>
+     */
+    public List<Integer> path(int from)
+    {
+        int start = maze.cellIndex(from);
+        // connect the start to the entrances of its cluster, and maybe a goal
+        int cluster = clusterOf(start);
+        LocalSearch local = new LocalSearch(cluster);
+        local.search(start);
+        int best = local.goalDistance();
+        int bestNode = -1;
+        int[] distance = new int[nodeCell.length];
+        int[] previous = new int[nodeCell.length];
+        Arrays.fill(distance, INFINITY);
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        for (int node: clusterNodes[cluster]) {
+            int d = local.distance(nodeCell[node]);
+            if (d < distance[node]) {
+                distance[node] = d;
+                previous[node] = -1;
+                queue.add(((long) d << 32) | node);
+            }
+        }
+        // Dijkstra on the abstract graph, until no node can improve the best goal
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int d = (int) (entry >>> 32), node = (int) entry;
+            if (d > distance[node])
+                continue;
+            if (d >= best)
+                break;
+            if (d + goalDistance[node] < best) {
+                best = d + goalDistance[node];
+                bestNode = node;
+            }
+            int[] adjacent = edges[node];
+            for (int i = 0; i < adjacent.length; i += 2) {
+                int nb = adjacent[i], nd = d + adjacent[i + 1];
+                if (nd < distance[nb]) {
+                    distance[nb] = nd;
+                    previous[nb] = node;
+                    queue.add(((long) nd << 32) | nb);
+                }
+            }
+        }
+        if (best >= INFINITY)
+            return null;
+        if (bestNode < 0) {
+            CompactPath.Builder path = CompactPath.Builder.from(maze, start);
+            addLeg(path, local.pathToGoal());
+            return path.build().asList();
+        }
+        return refine(start, bestNode, previous);
+    }
+
+    // concrete path from start through the abstract nodes ending in last, to a goal
+    private List<Integer> refine(int start, int last, int[] previous)
+    {
+        LinkedList<Integer> abstractPath = new LinkedList<>();
+        for (int node = last; node >= 0; node = previous[node])
+            abstractPath.addFirst(node);
+        CompactPath.Builder path = CompactPath.Builder.from(maze, start);
+        for (int node: abstractPath) {
+            int target = nodeCell[node];
+            if (target == path.current())
+                continue;
+            if (clusterOf(target) == clusterOf(path.current())) {
+                LocalSearch local = new LocalSearch(clusterOf(path.current()));
+                local.search(path.current());
+                addLeg(path, local.pathTo(target));
+            } else
+                path.add(target);
+        }
+        LocalSearch local = new LocalSearch(clusterOf(path.current()));
+        local.search(path.current());
+        addLeg(path, local.pathToGoal());
+        return path.build().asList();
+    }
+
+    // extend path with the cells of leg after its first, the current end of path
+    private static void addLeg(CompactPath.Builder path, List<Integer> leg)
+    {
+        for (int cell: leg.subList(1, leg.size()))
+            path.add(cell);
+    }
+
+    private int clusterOf(int index)
+    {
+        return (index / cols / clusterSize) * clusterCols + (index % cols) / clusterSize;
+    }
+
+    // create the abstract nodes and the edges between clusters
+    private void findEntrances(int clusters)
+    {
+        Map<Integer, Integer> cellToNode = new HashMap<>();
+        List<Integer> cellOfNode = new ArrayList<>();
+        List<List<Integer>> interEdges = new ArrayList<>();
+        // borders between vertically adjacent clusters
+        for (int row = clusterSize - 1; row + 1 < rows; row += clusterSize)
+            findEntrances(row * cols, 1, cols, Direction.SOUTH,
+                          cellToNode, cellOfNode, interEdges);
+        // borders between horizontally adjacent clusters
+        for (int col = clusterSize - 1; col + 1 < cols; col += clusterSize)
+            findEntrances(col, cols, rows, Direction.EAST,
+                          cellToNode, cellOfNode, interEdges);
+        int nodes = cellOfNode.size();
+        nodeCell = new int[nodes];
+        edges = new int[nodes][];
+        goalDistance = new int[nodes];
+        List<List<Integer>> members = new ArrayList<>(clusters);
+        for (int cluster = 0; cluster < clusters; cluster++)
+            members.add(new ArrayList<>());
+        for (int node = 0; node < nodes; node++) {
+            nodeCell[node] = cellOfNode.get(node);
+            members.get(clusterOf(nodeCell[node])).add(node);
+            List<Integer> adjacent = interEdges.get(node);
+            edges[node] = new int[adjacent.size() * 2];
+            for (int i = 0; i < adjacent.size(); i++) {
+                edges[node][2 * i] = adjacent.get(i);
+                edges[node][2 * i + 1] = 1;
+            }
+        }
+        clusterNodes = new int[clusters][];
+        for (int cluster = 0; cluster < clusters; cluster++)
+            clusterNodes[cluster] = members.get(cluster).stream().mapToInt(n -> n).toArray();
+    }
+
+    // scan length cells first, first + stride, ... crossing a border in direction
+    private void findEntrances(int first, int stride, int length, Direction direction,
+                               Map<Integer, Integer> cellToNode, List<Integer> cellOfNode,
+                               List<List<Integer>> interEdges)
+    {
+        int bit = direction.bit();
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            int cell = first + i * stride;
+            boolean open = i < length && maze.isOpen(cell)
+                && (maze.openDirections(cell) & bit) != 0;
+            // runs do not extend past the end of a cluster
+            boolean boundary = i < length && i % clusterSize == 0;
+            if (runStart >= 0 && (!open || boundary)) {
+                int middle = first + ((runStart + i - 1) / 2) * stride;
+                int a = node(middle, cellToNode, cellOfNode, interEdges);
+                int b = node(maze.step(middle, direction), cellToNode, cellOfNode, interEdges);
+                interEdges.get(a).add(b);
+                interEdges.get(b).add(a);
+                runStart = -1;
+            }
+            if (open && runStart < 0)
+                runStart = i;
+        }
+    }
+
+    private static int node(int cell, Map<Integer, Integer> cellToNode,
+                            List<Integer> cellOfNode, List<List<Integer>> interEdges)
+    {
+        Integer node = cellToNode.get(cell);
+        if (node == null) {
+            node = cellOfNode.size();
+            cellToNode.put(cell, node);
+            cellOfNode.add(cell);
+            interEdges.add(new ArrayList<>());
+        }
+        return node;
+    }
+
+    // computes the edges inside clusters [from, to)
+    private class ClusterTask extends RecursiveAction
+    {
+        private final int from;
+        private final int to;
+
+        ClusterTask(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > CLUSTERS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ClusterTask(from, middle), new ClusterTask(middle, to));
+                return;
+            }
+            for (int cluster = from; cluster < to; cluster++) {
+                LocalSearch local = new LocalSearch(cluster);
+                int[] members = clusterNodes[cluster];
+                for (int node: members) {
+                    local.search(nodeCell[node]);
+                    goalDistance[node] = local.goalDistance();
+                    int[] inter = edges[node];
+                    int[] all = Arrays.copyOf(inter, inter.length + 2 * members.length);
+                    int size = inter.length;
+                    for (int other: members) {
+                        int d = local.distance(nodeCell[other]);
+                        if (other != node && d < INFINITY) {
+                            all[size++] = other;
+                            all[size++] = d;
+                        }
+                    }
+                    edges[node] = Arrays.copyOf(all, size);
+                }
+            }
+        }
+    }
+
+    // breadth-first search restricted to the cells of one cluster
+    private class LocalSearch
+    {
+        private final int top;
+        private final int left;
+        private final int height;
+        private final int width;
+        private final int[] distance;
+        private final int[] parent;
+        private final int[] queue;
+        private int nearestGoal;
+
+        LocalSearch(int cluster)
+        {
+            top = (cluster / clusterCols) * clusterSize;
+            left = (cluster % clusterCols) * clusterSize;
+            height = Math.min(clusterSize, rows - top);
+            width = Math.min(clusterSize, cols - left);
+            distance = new int[height * width];
+            parent = new int[height * width];
+            queue = new int[height * width];
+        }
+
+        void search(int from)
+        {
+            Arrays.fill(distance, INFINITY);
+            nearestGoal = -1;
+            int head = 0, tail = 0;
+            int origin = local(from);
+            distance[origin] = 0;
+            parent[origin] = -1;
+            queue[tail++] = origin;
+            while (head < tail) {
+                int current = queue[head++];
+                int cell = global(current);
+                if (nearestGoal < 0 && maze.hasGoalAt(cell))
+                    nearestGoal = current;
+                int open = maze.openDirections(cell);
+                for (Direction direction: DIRECTIONS) {
+                    if ((open & direction.bit()) == 0)
+                        continue;
+                    int nb = local(maze.step(cell, direction));
+                    if (nb >= 0 && distance[nb] == INFINITY) {
+                        distance[nb] = distance[current] + 1;
+                        parent[nb] = current;
+                        queue[tail++] = nb;
+                    }
+                }
+            }
+        }
+
+        int distance(int cell)
+        {
+            return distance[local(cell)];
+        }
+
+        int goalDistance()
+        {
+            return nearestGoal < 0 ? INFINITY : distance[nearestGoal];
+        }
+
+        List<Integer> pathTo(int cell)
+        {
+            LinkedList<Integer> path = new LinkedList<>();
+            for (int current = local(cell); current >= 0; current = parent[current])
+                path.addFirst(global(current));
+            return path;
+        }
+
+        List<Integer> pathToGoal()
+        {
+            return pathTo(global(nearestGoal));
+        }
+
+        // index in the cluster of cell index, or -1 if outside the cluster
+        private int local(int cell)
+        {
+            int row = cell / cols - top, col = cell % cols - left;
+            if (row < 0 || row >= height || col < 0 || col >= width)
+                return -1;
+            return row * width + col;
+        }
+
+        private int global(int local)
+        {
+            return (top + local / width) * cols + left + local % width;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Direction;
+import amazed.maze.Maze;
+import amazed.maze.Phase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <code>ExternalSolver</code> implements a solver for
+ * <code>Maze</code> objects whose search structures live on disk, so
+ * that the heap used by the search is bounded independently of the
+ * size of the maze.
+ * <p>
+ * The bound only covers the search structures: the board file is
+ * filled by reading the maze, which must therefore be loaded first.
+ * With the default in-memory storage, the whole board is on the heap
+ * before the solver starts; the solver is meant to be used on mazes
+ * stored with <code>BoardStorage.LAZY</code> or
+ * <code>BoardStorage.OFF_HEAP</code> (options <code>--lazy</code> and
+ * <code>--off-heap</code>), which do not keep the whole board on the
+ * heap.
+ * <p>
+ * The solver performs a breadth-first search one level at a time.
+ * The cells of the maze are copied into a memory-mapped file, one
+ * byte per cell holding the cell's mask of open directions, and the
+ * predecessor of every reached cell is recorded as a 2-bit
+ * "came-from" direction in a second memory-mapped file. Each level
+ * of the frontier is a file of sorted cell indexes. The candidates
+ * for the next level are collected in a buffer of
+ * <code>runLength</code> entries, which is sorted and spilled to disk
+ * as a run whenever it fills up; the runs are then merged,
+ * deduplicated, and stripped of the cells in the current and previous
+ * levels &mdash; which, in an undirected graph, are the only already
+ * reached cells a neighbor can belong to. Hence, no visited set is
+ * needed.
+ * <p>
+ * Method <code>compute</code> returns a path in the same format as
+ * <code>SequentialSolver.pathFromTo</code>; since the search is
+ * breadth-first, the path is a shortest one.
+ */
+
+public class ExternalSolver extends SequentialSolver {
+
+    /**
+     * Default number of entries buffered before a sorted run is
+     * spilled to disk (8 MB of heap).
+     */
+    public static final int DEFAULT_RUN_LENGTH = 1 << 20;
+
+    // a cell in the board file is its mask of open directions,
+    // plus this bit if it is a goal
+    private static final int GOAL = 1 << 4;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final File workDir;
+    private final int runLength;
+
+    private MappedBytes board;
+    private MappedBytes cameFrom;
+    private long[] buffer;
+    private List<File> scratch = new ArrayList<>();
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, keeping its files in the default
+     * temporary directory.
+     *
+     * @param maze the maze to be searched
+     */
+    public ExternalSolver(Maze maze) {
+        this(maze, null, DEFAULT_RUN_LENGTH);
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze      the maze to be searched
+     * @param workDir   the directory where the solver keeps its files;
+     *                  if <code>null</code>, the default temporary
+     *                  directory is used
+     * @param runLength the number of frontier entries buffered in
+     *                  memory before they are spilled to disk; this
+     *                  bounds the heap used by the solver
+     */
+    public ExternalSolver(Maze maze, File workDir, int runLength) {
+        super(maze);
+        if (runLength <= 0)
+            throw new IllegalArgumentException("run length must be positive: " + runLength);
+        this.workDir = workDir;
+        this.runLength = runLength;
+    }
+
+    /**
+     * Leaves <code>visited</code>, <code>predecessor</code>, and
+     * <code>frontier</code> uninitialized: the solver keeps the
+     * corresponding information on disk.
+     */
+    @Override
+    protected void initStructures() {
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute() {
+        try {
+            return externalSearch();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (File file: scratch)
+                file.delete();
+            scratch.clear();
+        }
+    }
+
+    private List<Integer> externalSearch() throws IOException {
+        int player = maze.newPlayer(start);
+        long cells = (long) maze.rows() * maze.cols();
+        board = new MappedBytes(newScratchFile("board"), cells);
+        cameFrom = new MappedBytes(newScratchFile("camefrom"), (cells + 3) / 4);
+        for (int index = 0; index < cells; index++) {
+            int code = maze.openDirections(index);
+            if (maze.hasGoalAt(index))
+                code |= GOAL;
+            board.put(index, (byte) code);
+        }
+        int from = maze.cellIndex(start);
+        if ((board.get(from) & GOAL) != 0)
+            return pathBetweenCells(from, from);
+        File previous = writeLevel(new int[0]);
+        File current = writeLevel(new int[] { from });
+        while (current.length() > 0) {
+            List<File> runs = expand(current);
+            File next = newScratchFile("level");
+            int goal = merge(runs, previous, current, next);
+            for (File run: runs)
+                release(run);
+            release(previous);
+            previous = current;
+            current = next;
+            if (goal >= 0) {
+                maze.move(player, maze.cellId(goal));
+                return pathBetweenCells(from, goal);
+            }
+        }
+        return null;
+    }
+
+    // write sorted runs of (neighbor, direction back to parent) for all cells in level
+    private List<File> expand(File level) throws IOException {
+        List<File> runs = new ArrayList<>();
+        if (buffer == null)
+            buffer = new long[runLength];
+        int size = 0;
+        try (IntReader reader = new IntReader(level)) {
+            while (reader.hasNext()) {
+                int index = reader.next();
+                int open = board.get(index);
+                for (Direction direction: DIRECTIONS) {
+                    if ((open & direction.bit()) == 0)
+                        continue;
+                    int nb = maze.step(index, direction);
+                    if (size == buffer.length) {
+                        runs.add(writeRun(buffer, size));
+                        size = 0;
+                    }
+                    buffer[size++] = ((long) nb << 2) | direction.opposite().ordinal();
+                }
+            }
+        }
+        if (size > 0)
+            runs.add(writeRun(buffer, size));
+        return runs;
+    }
+
+    // merge runs into next, dropping duplicates and cells in previous or current;
+    // return the first goal cell in next, or -1 if there is none
+    private int merge(List<File> runs, File previous, File current, File next)
+    throws IOException {
+        PriorityQueue<LongReader> queue = new PriorityQueue<>(Math.max(1, runs.size()));
+        int goal = -1;
+        try (IntReader old = new IntReader(previous);
+             IntReader now = new IntReader(current);
+             DataOutputStream out = output(next)) {
+            for (File run: runs) {
+                LongReader reader = new LongReader(run);
+                if (reader.hasNext())
+                    queue.add(reader);
+                else
+                    reader.close();
+            }
+            int last = -1;
+            while (!queue.isEmpty()) {
+                LongReader reader = queue.poll();
+                long entry = reader.next();
+                if (reader.hasNext())
+                    queue.add(reader);
+                else
+                    reader.close();
+                int index = (int) (entry >>> 2);
+                if (index == last)
+                    continue;
+                last = index;
+                if (old.skipTo(index) || now.skipTo(index))
+                    continue;
+                out.writeInt(index);
+                cameFrom.putDirection(index, (int) (entry & 3));
+                if (goal < 0 && (board.get(index) & GOAL) != 0)
+                    goal = index;
+            }
+        } finally {
+            for (LongReader reader: queue)
+                reader.close();
+        }
+        return goal;
+    }
+
+    // list of node identifiers from cell index from to cell index to,
+    // following the came-from directions backwards
+    private List<Integer> pathBetweenCells(int from, int to) {
+        long begin = System.nanoTime();
+        CompactPath.Builder path = CompactPath.Builder.to(maze, to);
+        while (path.current() != from)
+            path.add(DIRECTIONS[cameFrom.getDirection(path.current())]);
+        maze.timings().record(Phase.PATH, begin);
+        return path.build().asList();
+    }
+
+    private File writeLevel(int[] indexes) throws IOException {
+        File file = newScratchFile("level");
+        try (DataOutputStream out = output(file)) {
+            for (int index: indexes)
+                out.writeInt(index);
+        }
+        return file;
+    }
+
+    private File writeRun(long[] buffer, int size) throws IOException {
+        Arrays.sort(buffer, 0, size);
+        File file = newScratchFile("run");
+        try (DataOutputStream out = output(file)) {
+            for (int i = 0; i < size; i++)
+                out.writeLong(buffer[i]);
+        }
+        return file;
+    }
+
+    private File newScratchFile(String prefix) throws IOException {
+        File file = File.createTempFile("amazed-" + prefix, ".bin", workDir);
+        file.deleteOnExit();
+        scratch.add(file);
+        return file;
+    }
+
+    private void release(File file) {
+        file.delete();
+        scratch.remove(file);
+    }
+
+    private static DataOutputStream output(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    // sequential reader of a sorted file of ints
+    private static class IntReader implements AutoCloseable {
+        private final DataInputStream in;
+        private boolean hasNext;
+        private int next;
+
+        IntReader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            advance();
+        }
+
+        boolean hasNext() {
+            return hasNext;
+        }
+
+        int next() throws IOException {
+            int result = next;
+            advance();
+            return result;
+        }
+
+        // skip all values smaller than value; return whether value is present
+        boolean skipTo(int value) throws IOException {
+            while (hasNext && next < value)
+                advance();
+            return hasNext && next == value;
+        }
+
+        private void advance() throws IOException {
+            try {
+                next = in.readInt();
+                hasNext = true;
+            } catch (EOFException e) {
+                hasNext = false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // sequential reader of a sorted run of longs, ordered by its next value
+    private static class LongReader implements AutoCloseable, Comparable<LongReader> {
+        private final DataInputStream in;
+        private boolean hasNext;
+        private long next;
+
+        LongReader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            advance();
+        }
+
+        boolean hasNext() {
+            return hasNext;
+        }
+
+        long next() throws IOException {
+            long result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() throws IOException {
+            try {
+                next = in.readLong();
+                hasNext = true;
+            } catch (EOFException e) {
+                hasNext = false;
+            }
+        }
+
+        @Override
+        public int compareTo(LongReader other) {
+            return Long.compare(next, other.next);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // a file of bytes mapped in memory, in segments of at most 1 GB
+    private static class MappedBytes {
+        private static final int SEGMENT_BITS = 30;
+        private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+        private final MappedByteBuffer[] segments;
+
+        MappedBytes(File file, long size) throws IOException {
+            int count = (int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS);
+            segments = new MappedByteBuffer[Math.max(1, count)];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                raf.setLength(size);
+                for (int i = 0; i < segments.length; i++) {
+                    long offset = (long) i << SEGMENT_BITS;
+                    long length = Math.min(size - offset, 1L << SEGMENT_BITS);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                              offset, Math.max(0, length));
+                }
+            }
+        }
+
+        byte get(long position) {
+            return segments[(int) (position >>> SEGMENT_BITS)]
+                .get((int) (position & SEGMENT_MASK));
+        }
+
+        void put(long position, byte value) {
+            segments[(int) (position >>> SEGMENT_BITS)]
+                .put((int) (position & SEGMENT_MASK), value);
+        }
+
+        // 2-bit entry number index
+        int getDirection(int index) {
+            return (get(index >>> 2) >>> ((index & 3) << 1)) & 3;
+        }
+
+        void putDirection(int index, int direction) {
+            int shift = (index & 3) << 1;
+            byte b = get(index >>> 2);
+            put(index >>> 2, (byte) ((b & ~(3 << shift)) | (direction << shift)));
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package amazed.solver;
 
+import amazed.maze.CellSet;
 import amazed.maze.Maze;
+import amazed.maze.OffHeapArena;
+import amazed.maze.Phase;
+import amazed.maze.PackedDirections;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -21,6 +25,8 @@ public class ForkJoinSolver extends SequentialSolver {
 
     private List<ForkJoinSolver> subtasks = new ArrayList<>();
     private int outset = start;
+    // number of forks from the first task to this task
+    private int depth = 0;
 
     /**
      * Creates a solver that searches in <code>maze</code> from the start node to a
@@ -30,6 +36,17 @@ public class ForkJoinSolver extends SequentialSolver {
      */
     public ForkJoinSolver(Maze maze) {
         super(maze);
+        OffHeapArena arena = maze.offHeapArena();
+        int cells = maze.rows() * maze.cols();
+        // a new search starts from scratch
+        if (arena == null) {
+            predecessor = new PackedDirections(cells);
+            visited = new ConcurrentSkipListSet<>();
+        } else {
+            predecessor = new PackedDirections(cells, arena);
+            visited = new VisitedCells(maze, new CellSet(cells, arena));
+        }
+        finished = false;
     }
 
     /**
@@ -49,10 +66,22 @@ public class ForkJoinSolver extends SequentialSolver {
     }
 
     private ForkJoinSolver(Maze maze, int forkAfter,
-                           Map<Integer, Integer> predecessor, int outset) {
-        this(maze, forkAfter);
+                           PackedDirections predecessor, int outset, int depth) {
+        super(maze);
+        this.forkAfter = forkAfter;
         this.outset = outset;
         this.predecessor = predecessor;
+        this.depth = depth;
+    }
+
+    /**
+     * Initializes <code>frontier</code> with an empty stack. All tasks
+     * share <code>predecessor</code>, which is only allocated by the
+     * task that starts the search.
+     */
+    @Override
+    protected void initStructures() {
+        frontier = new Stack<>();
     }
 
     /**
@@ -68,14 +97,38 @@ public class ForkJoinSolver extends SequentialSolver {
      */
     @Override
     public List<Integer> compute() {
-        return parallelSearch();
+        long begin = System.nanoTime();
+        try {
+            return parallelSearch();
+        } finally {
+            maze.timings().record(Phase.TASK, begin);
+        }
+    }
+
+    /**
+     * Returns the number of nodes expanded by all tasks.
+     *
+     * @return   the number of expanded nodes
+     */
+    @Override
+    public long expanded() {
+        return visited.size();
     }
 
     private List<Integer> parallelSearch() {
+        // no goal to reach
+        if (maze.goalCount() == 0)
+            return null;
+        SolverEvents.Task event = SolverEvents.enabled() ? new SolverEvents.Task() : null;
+        if (event != null)
+            event.begin();
         int player = maze.newPlayer(outset);
 
         frontier.push(outset);
 
+        int expanded = 0;
+        boolean found = false;
+        List<Integer> path = null;
         while (!frontier.empty() && !finished) {
             int current = frontier.pop();
 
@@ -84,11 +137,14 @@ public class ForkJoinSolver extends SequentialSolver {
 
                 finished = true;
 
-                return pathFromTo(start, current);
+                found = true;
+                path = pathFromTo(start, current);
+                break;
             }
 
             maze.move(player, current);
             visited.add(current);
+            expanded += 1;
 
             Iterator<Integer> it = unvisited(current).iterator();
 
@@ -99,38 +155,85 @@ public class ForkJoinSolver extends SequentialSolver {
             }
         }
 
-        return join_tasks();
+        if (event != null && event.shouldCommit()) {
+            event.depth = depth;
+            event.expanded = expanded;
+            event.forked = subtasks.size();
+            event.found = found;
+            event.commit();
+        }
+
+        return found ? path : join_tasks();
     }
 
     private List<Integer> join_tasks() {
+        SolverEvents.Join event = SolverEvents.enabled() ? new SolverEvents.Join() : null;
+        if (event != null)
+            event.begin();
+        List<Integer> path = null;
+        int joined = 0;
         for (ForkJoinSolver st: subtasks) {
             List<Integer> sp = st.join();
+            joined += 1;
 
-            if (sp != null)
-                return sp;
+            if (sp != null) {
+                path = sp;
+                break;
+            }
         }
 
-        return null;
+        if (event != null && event.shouldCommit()) {
+            event.depth = depth;
+            event.joined = joined;
+            event.found = path != null;
+            event.commit();
+        }
+        return path;
     }
 
     private void createTasks(int current, Iterator<Integer> it) {
+        SolverEvents.Fork event = SolverEvents.enabled() ? new SolverEvents.Fork() : null;
+        if (event != null)
+            event.begin();
+        int forked = 0;
         ForkJoinSolver task;
         while (it.hasNext()) {
             int node = it.next();
 
-            task = new ForkJoinSolver(maze, forkAfter, predecessor, node);
+            task = new ForkJoinSolver(maze, forkAfter, predecessor, node, depth + 1);
 
             subtasks.add(task);
-            predecessor.put(node, current);
+            setPredecessor(node, current);
 
             task.fork();
+            forked += 1;
             //task.join(); // only for testing
         }
+
+        if (event != null && event.shouldCommit()) {
+            event.depth = depth;
+            event.forked = forked;
+            event.commit();
+        }
     }
 
     private void progress(int current, int next) {
         frontier.push(next);
-        predecessor.put(next, current);
+        setPredecessor(next, current);
+    }
+
+    /**
+     * Records that node <code>node</code> has been reached from its
+     * neighbor <code>from</code>. Tasks share <code>predecessor</code>,
+     * so the direction is written atomically.
+     *
+     * @param node   the identifier of a node in the maze
+     * @param from   the identifier of a node adjacent to <code>node</code>
+     */
+    @Override
+    protected void setPredecessor(int node, int from) {
+        int index = maze.cellIndex(node);
+        predecessor.setAtomic(index, maze.direction(index, maze.cellIndex(from)));
     }
 
     private Set<Integer> unvisited(int current) {
@@ -0,0 +1,57 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+
+/**
+ * <code>GoalDistance</code> estimates the number of steps from a cell
+ * of a maze to its nearest goal, without searching: it never exceeds
+ * the length of a shortest path, so that A* searches can use it as an
+ * admissible heuristic.
+ * <p>
+ * With a handful of goals, the estimate is the Manhattan distance to
+ * the nearest goal, which costs a loop over the goals. With more
+ * goals, it is the Manhattan distance to the smallest rectangle
+ * holding all goals, which costs the same whatever their number, but
+ * is <code>0</code> inside the rectangle.
+ */
+
+class GoalDistance {
+
+    // largest number of goals whose distances are computed one by one
+    private static final int MAX_EXACT_GOALS = 8;
+
+    private final int cols;
+    // goal cell indexes, or null if the bounding rectangle is used
+    private final int[] goals;
+    private final int minRow, maxRow, minCol, maxCol;
+
+    GoalDistance(Maze maze) {
+        cols = maze.cols();
+        int[] all = maze.goals();
+        goals = all.length <= MAX_EXACT_GOALS ? all : null;
+        int top = Integer.MAX_VALUE, bottom = -1, left = Integer.MAX_VALUE, right = -1;
+        for (int goal: all) {
+            top = Math.min(top, goal / cols);
+            bottom = Math.max(bottom, goal / cols);
+            left = Math.min(left, goal % cols);
+            right = Math.max(right, goal % cols);
+        }
+        minRow = top;
+        maxRow = bottom;
+        minCol = left;
+        maxCol = right;
+    }
+
+    // lower bound of the number of steps from cell index to a goal;
+    // 0 if there are no goals
+    int estimate(int index) {
+        int row = index / cols, col = index % cols;
+        if (goals == null)
+            return Math.max(0, Math.max(minRow - row, row - maxRow))
+                + Math.max(0, Math.max(minCol - col, col - maxCol));
+        int best = goals.length == 0 ? 0 : Integer.MAX_VALUE;
+        for (int goal: goals)
+            best = Math.min(best, Math.abs(goal / cols - row) + Math.abs(goal % cols - col));
+        return best;
+    }
+}
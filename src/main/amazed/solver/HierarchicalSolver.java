@@ -0,0 +1,81 @@
+package amazed.solver;
+
+import amazed.maze.Maze;
+import amazed.maze.Phase;
+
+import java.util.List;
+
+/**
+ * <code>HierarchicalSolver</code> implements a solver for
+ * <code>Maze</code> objects using hierarchical path-finding (HPA*)
+ * on a {@link ClusterGraph}.
+ * <p>
+ * Building the cluster graph touches the whole maze once, but each
+ * search then only touches the small abstract graph and the clusters
+ * the path crosses. Several solvers can share the same cluster graph
+ * to answer many queries on the same maze. The returned path is not
+ * necessarily a shortest one.
+ */
+
+public class HierarchicalSolver extends SequentialSolver {
+
+    private ClusterGraph graph;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, building a cluster graph with clusters of
+     * default size.
+     *
+     * @param maze the maze to be searched
+     */
+    public HierarchicalSolver(Maze maze) {
+        this(maze, null);
+    }
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal, using a given cluster graph.
+     *
+     * @param maze    the maze to be searched
+     * @param graph   a cluster graph of <code>maze</code>; if
+     *                <code>null</code>, the solver builds one when it
+     *                is run
+     */
+    public HierarchicalSolver(Maze maze, ClusterGraph graph) {
+        super(maze);
+        this.graph = graph;
+    }
+
+    /**
+     * Leaves <code>visited</code>, <code>predecessor</code>, and
+     * <code>frontier</code> uninitialized: the search uses the
+     * structures of the cluster graph.
+     */
+    @Override
+    protected void initStructures() {
+    }
+
+    /**
+     * Searches for and returns a path, as a list of node identifiers,
+     * that goes from the start node to a goal node in the maze. If
+     * such a path cannot be found (because there are no goals, or all
+     * goals are unreachable), the method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute() {
+        int player = maze.newPlayer(start);
+        if (graph == null) {
+            long begin = System.nanoTime();
+            graph = new ClusterGraph(maze);
+            maze.timings().record(Phase.PREPROCESS, begin);
+        }
+        List<Integer> path = graph.path(start);
+        if (path != null)
+            maze.move(player, path.get(path.size() - 1));
+        return path;
+    }
+}
@@ -0,0 +1,294 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Direction;
+import amazed.maze.Maze;
+import amazed.maze.Phase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <code>IncrementalSolver</code> implements a solver for
+ * <code>Maze</code> objects whose bricks change between searches,
+ * using Lifelong Planning A* (LPA*).
+ * <p>
+ * The search runs backwards, from all goals towards the start node,
+ * so that the start is the single target of the search and the
+ * Manhattan distance to it is a consistent heuristic. For every cell,
+ * <code>g</code> is the distance to the nearest goal found so far,
+ * and <code>rhs</code> is the one-step lookahead of <code>g</code>
+ * computed from the cell's open neighbors; cells where the two
+ * differ are kept in a priority queue. After a brick is added or
+ * removed with {@link #toggleBrick(int)} &mdash; or after the maze
+ * is changed directly and the change is reported with
+ * {@link #cellChanged(int)} &mdash; only the affected cells are put
+ * back in the queue, and the next call to <code>compute</code>
+ * repairs the previous solution instead of searching from scratch.
+ * <p>
+ * Method <code>compute</code> can be called any number of times;
+ * each call returns a shortest path from the start node to a goal
+ * in the current maze.
+ */
+
+public class IncrementalSolver extends SequentialSolver {
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int cols;
+    private int target;
+
+    private int[] g;
+    private int[] rhs;
+    private IndexedHeap queue;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the start node to a
+     * goal.
+     *
+     * @param maze the maze to be searched
+     */
+    public IncrementalSolver(Maze maze) {
+        super(maze);
+    }
+
+    /**
+     * Initializes the distances of LPA*: every goal is the source of
+     * the backward search, and all other cells are unreached.
+     * <code>visited</code>, <code>predecessor</code>, and
+     * <code>frontier</code> are not used.
+     */
+    @Override
+    protected void initStructures() {
+        int cells = maze.rows() * maze.cols();
+        cols = maze.cols();
+        target = maze.cellIndex(start);
+        g = new int[cells];
+        rhs = new int[cells];
+        queue = new IndexedHeap(cells);
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        for (int index: maze.goals()) {
+            rhs[index] = 0;
+            queue.put(index, key(index));
+        }
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze, reusing the results of the previous searches. If such
+     * a path cannot be found (because there are no goals, or all
+     * goals are unreachable), the method returns <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute() {
+        int player = maze.newPlayer(start);
+        computeShortestPath();
+        if (g[target] >= INFINITY)
+            return null;
+        long begin = System.nanoTime();
+        CompactPath.Builder path = CompactPath.Builder.from(maze, target);
+        int current = target;
+        // descend distances to the nearest goal
+        while (g[current] > 0) {
+            int open = maze.openDirections(current);
+            int next = current;
+            for (Direction direction: DIRECTIONS) {
+                int nb = maze.step(current, direction);
+                if ((open & direction.bit()) != 0 && g[nb] < g[next])
+                    next = nb;
+            }
+            if (next == current) {
+                maze.timings().record(Phase.PATH, begin);
+                return null;
+            }
+            current = next;
+            path.add(current);
+        }
+        maze.timings().record(Phase.PATH, begin);
+        maze.move(player, maze.cellId(current));
+        return path.build().asList();
+    }
+
+    /**
+     * Reports that the cell at a given cell index has changed since
+     * the last search, so that the next call to <code>compute</code>
+     * takes the change into account.
+     *
+     * @param index   the cell index of a changed cell in the maze
+     */
+    public void cellChanged(int index) {
+        updateCell(index);
+        for (Direction direction: DIRECTIONS) {
+            int nb = maze.step(index, direction);
+            if (nb >= 0)
+                updateCell(nb);
+        }
+    }
+
+    /**
+     * Removes the brick from the cell at a given cell index, or puts
+     * a brick on it if it is empty, and repairs the solution.
+     *
+     * @param index   the cell index of a brick or empty cell
+     * @return        the list of node identifiers from the start node to a
+     *                goal node in the changed maze; <code>null</code> if
+     *                such a path cannot be found
+     */
+    public List<Integer> toggleBrick(int index) {
+        maze.toggleBrick(index);
+        cellChanged(index);
+        return compute();
+    }
+
+    private void computeShortestPath() {
+        while (!queue.isEmpty()
+               && (queue.peekKey() < key(target) || rhs[target] != g[target])) {
+            int u = queue.poll();
+            if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                updateNeighbors(u);
+            } else {
+                g[u] = INFINITY;
+                updateCell(u);
+                updateNeighbors(u);
+            }
+        }
+    }
+
+    private void updateNeighbors(int index) {
+        int open = maze.openDirections(index);
+        for (Direction direction: DIRECTIONS)
+            if ((open & direction.bit()) != 0)
+                updateCell(maze.step(index, direction));
+    }
+
+    // recompute rhs of index from its neighbors, and queue it if inconsistent
+    private void updateCell(int index) {
+        if (!maze.hasGoalAt(index)) {
+            int best = INFINITY;
+            if (maze.isOpen(index)) {
+                int open = maze.openDirections(index);
+                for (Direction direction: DIRECTIONS)
+                    if ((open & direction.bit()) != 0)
+                        best = Math.min(best, g[maze.step(index, direction)] + 1);
+            }
+            rhs[index] = best;
+        }
+        if (g[index] != rhs[index])
+            queue.put(index, key(index));
+        else
+            queue.remove(index);
+    }
+
+    // priority [min(g, rhs) + h; min(g, rhs)], compared lexicographically
+    private long key(int index) {
+        int distance = Math.min(g[index], rhs[index]);
+        if (distance >= INFINITY)
+            return Long.MAX_VALUE;
+        int heuristic = Math.abs(index / cols - target / cols)
+            + Math.abs(index % cols - target % cols);
+        return ((long) (distance + heuristic) << 32) | distance;
+    }
+
+    // binary min-heap of cell indexes, with priorities that can change
+    private static class IndexedHeap {
+        private final int[] heap;
+        private final int[] position;
+        private final long[] keys;
+        private int size = 0;
+
+        IndexedHeap(int capacity) {
+            heap = new int[capacity];
+            position = new int[capacity];
+            keys = new long[capacity];
+            Arrays.fill(position, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peekKey() {
+            return keys[heap[0]];
+        }
+
+        int poll() {
+            int top = heap[0];
+            remove(top);
+            return top;
+        }
+
+        // insert index, or change its key if already present
+        void put(int index, long key) {
+            int i = position[index];
+            if (i < 0) {
+                i = size++;
+                heap[i] = index;
+                position[index] = i;
+                keys[index] = key;
+                up(i);
+            } else {
+                long old = keys[index];
+                keys[index] = key;
+                if (key < old)
+                    up(i);
+                else
+                    down(i);
+            }
+        }
+
+        void remove(int index) {
+            int i = position[index];
+            if (i < 0)
+                return;
+            position[index] = -1;
+            size -= 1;
+            if (i == size)
+                return;
+            int last = heap[size];
+            move(last, i);
+            up(i);
+            down(position[last]);
+        }
+
+        private void up(int i) {
+            int index = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[heap[parent]] <= keys[index])
+                    break;
+                move(heap[parent], i);
+                i = parent;
+            }
+            move(index, i);
+        }
+
+        private void down(int i) {
+            int index = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+                    child += 1;
+                if (keys[heap[child]] >= keys[index])
+                    break;
+                move(heap[child], i);
+                i = child;
+            }
+            move(index, i);
+        }
+
+        private void move(int index, int i) {
+            heap[i] = index;
+            position[index] = i;
+        }
+    }
+}
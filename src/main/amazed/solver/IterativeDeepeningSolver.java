@@ -0,0 +1,206 @@
+package amazed.solver;
+
+import amazed.maze.BitboardFlood;
+import amazed.maze.CompactPath;
+import amazed.maze.Direction;
+import amazed.maze.Maze;
+import amazed.maze.Phase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <code>IterativeDeepeningSolver</code> implements a solver for
+ * <code>Maze</code> objects using iterative-deepening depth-first
+ * search: a sequence of depth-first searches from the start node,
+ * each following paths one step longer than the previous one, until
+ * one of them reaches a goal.
+ * <p>
+ * The solver keeps no set of visited nodes. A bounded search only
+ * stores the path from the start node to the node it is visiting,
+ * and a bitmap of one bit per cell marking the nodes on that path,
+ * which it never extends with a node already on it; thus, its memory
+ * does not grow with the number of nodes reached. The price is time:
+ * a node is visited again by every search, and once for every path
+ * that reaches it, which grows quickly in the open areas of a maze.
+ * The first path found is a shortest one.
+ * <p>
+ * Before searching, the solver floods the maze with a
+ * <code>BitboardFlood</code>, which also takes one bit per cell: if
+ * no goal can be reached it returns at once, instead of trying every
+ * path from the start node, and otherwise the bounds of the searches
+ * stop at the distance to the nearest goal.
+ * <p>
+ * Every bounded search is split into fork/join tasks, one per
+ * neighbor of the start node, which run in parallel; when a task
+ * reaches a goal, the other tasks of the search stop.
+ */
+
+public class IterativeDeepeningSolver extends SequentialSolver {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // nodes expanded by all the bounded searches of the last search
+    private final LongAdder expanded = new LongAdder();
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the
+     * start node to a goal.
+     *
+     * @param maze   the maze to be searched
+     */
+    public IterativeDeepeningSolver(Maze maze) {
+        super(maze);
+    }
+
+    /**
+     * Does nothing: <code>visited</code>, <code>predecessor</code>, and
+     * <code>frontier</code> are not used.
+     */
+    @Override
+    protected void initStructures() {
+    }
+
+    /**
+     * Returns the number of nodes expanded by the last search, adding
+     * up all its bounded searches.
+     *
+     * @return   the number of expanded nodes
+     */
+    @Override
+    public long expanded() {
+        return expanded.sum();
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute() {
+        expanded.reset();
+        // no goal to reach
+        if (maze.goalCount() == 0)
+            return null;
+        int player = maze.newPlayer(start);
+        int from = maze.cellIndex(start);
+        expanded.increment();
+        if (maze.hasGoalAt(from))
+            return toPath(new int[] { from });
+        BitboardFlood flood = new BitboardFlood(maze);
+        if (!flood.isGoalReachable(from))
+            return null;
+        int distance = flood.distanceToGoal(from);
+        int open = maze.openDirections(from);
+        for (int bound = 1; bound <= distance; bound++) {
+            AtomicBoolean found = new AtomicBoolean();
+            List<BranchTask> tasks = new ArrayList<>();
+            for (Direction direction: DIRECTIONS) {
+                if ((open & direction.bit()) != 0)
+                    tasks.add(new BranchTask(from, maze.step(from, direction), bound, found));
+            }
+            invokeAll(tasks);
+            boolean cutoff = false;
+            for (BranchTask task: tasks) {
+                if (task.path != null) {
+                    List<Integer> path = toPath(task.path);
+                    maze.move(player, path.get(path.size() - 1));
+                    return path;
+                }
+                cutoff |= task.cutoff;
+            }
+            // no path reached the bound: a longer bound reaches no more nodes
+            if (!cutoff)
+                return null;
+        }
+        return null;
+    }
+
+    private List<Integer> toPath(int[] cells) {
+        long begin = System.nanoTime();
+        CompactPath.Builder path = CompactPath.Builder.from(maze, cells[0]);
+        for (int i = 1; i < cells.length; i++)
+            path.add(cells[i]);
+        maze.timings().record(Phase.PATH, begin);
+        return path.build().asList();
+    }
+
+    // depth-first search of the paths of at most bound steps that
+    // begin with origin and branch, stopping when found is set; sets
+    // path to the cells of the path if it reaches a goal, and cutoff if
+    // some path was cut at the bound
+    private class BranchTask extends RecursiveAction {
+        private final int origin;
+        private final int branch;
+        private final int bound;
+        private final AtomicBoolean found;
+        private int[] path;
+        private boolean cutoff;
+
+        BranchTask(int origin, int branch, int bound, AtomicBoolean found) {
+            this.origin = origin;
+            this.branch = branch;
+            this.bound = bound;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            // cells[0..depth] is the current path; next[d] is the next
+            // direction to follow from cells[d]
+            int[] cells = new int[bound + 1];
+            int[] next = new int[bound + 1];
+            // bit c % 64 of onPath[c / 64] is set if cell c is on the path
+            long[] onPath = new long[(maze.rows() * maze.cols() + 63) >>> 6];
+            cells[0] = origin;
+            cells[1] = branch;
+            onPath[origin >>> 6] |= 1L << origin;
+            onPath[branch >>> 6] |= 1L << branch;
+            int depth = 1;
+            long count = 0;
+            while (depth > 0 && !found.get()) {
+                int current = cells[depth];
+                if (next[depth] == 0) {
+                    count += 1;
+                    if (maze.hasGoalAt(current)) {
+                        if (found.compareAndSet(false, true)) {
+                            path = new int[depth + 1];
+                            System.arraycopy(cells, 0, path, 0, depth + 1);
+                        }
+                        break;
+                    }
+                    if (depth == bound) {
+                        cutoff = true;
+                        next[depth] = DIRECTIONS.length;
+                    }
+                }
+                if (next[depth] < DIRECTIONS.length) {
+                    Direction direction = DIRECTIONS[next[depth]++];
+                    if ((maze.openDirections(current) & direction.bit()) != 0) {
+                        int nb = maze.step(current, direction);
+                        if ((onPath[nb >>> 6] & (1L << nb)) == 0) {
+                            onPath[nb >>> 6] |= 1L << nb;
+                            depth += 1;
+                            cells[depth] = nb;
+                            next[depth] = 0;
+                        }
+                    }
+                } else {
+                    onPath[current >>> 6] &= ~(1L << current);
+                    depth -= 1;
+                }
+            }
+            expanded.add(count);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.Direction;
+import amazed.maze.Maze;
+import amazed.maze.Phase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <code>JumpPointSolver</code> implements a solver for
+ * <code>Maze</code> objects using Jump Point Search (JPS) on the
+ * 4-connected grid of the maze.
+ * <p>
+ * On open areas, many shortest paths are symmetric: they only differ
+ * in the order of their moves. JPS explores a single canonical one,
+ * which turns from a horizontal to a vertical direction as soon as
+ * possible. From every expanded node, the search <em>jumps</em> in a
+ * straight line, without expanding the cells it crosses, until it
+ * reaches a goal or a <em>jump point</em>: a cell with a forced
+ * neighbor &mdash; an open cell beside the line that could not be
+ * reached as cheaply otherwise &mdash; or, when jumping vertically, a
+ * cell from which a horizontal jump reaches a jump point. Only jump
+ * points enter the A* open list, ordered by the distance travelled
+ * plus an estimate of the distance to the nearest goal (see
+ * <code>GoalDistance</code>), computed once per jump point.
+ * <p>
+ * The solver works on cell coordinates and on a bitmap of the
+ * accessible cells, built once when the solver is created. The path
+ * it returns is a shortest one.
+ */
+
+public class JumpPointSolver extends SequentialSolver {
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    // directions in the same order as amazed.maze.Direction
+    private static final int[] ROW_STEPS = { -1, 1, 0, 0 };
+    private static final int[] COL_STEPS = { 0, 0, -1, 1 };
+
+    private int rows;
+    private int cols;
+    private long[] open;
+    private int[] goals;
+    private GoalDistance goalDistance;
+
+    private int[] distance;
+    private int[] parent;
+    // estimated distance to the nearest goal of every reached cell
+    private int[] estimate;
+    private long expanded;
+
+    /**
+     * Creates a solver that searches in <code>maze</code> from the start node to a
+     * goal.
+     *
+     * @param maze the maze to be searched
+     */
+    public JumpPointSolver(Maze maze) {
+        super(maze);
+    }
+
+    /**
+     * Builds the bitmap of accessible cells and the list of goals.
+     * <code>visited</code>, <code>predecessor</code>, and
+     * <code>frontier</code> are not used.
+     */
+    @Override
+    protected void initStructures() {
+        rows = maze.rows();
+        cols = maze.cols();
+        int cells = rows * cols;
+        open = new long[(cells + 63) >>> 6];
+        for (int index = 0; index < cells; index++) {
+            if (maze.isOpen(index))
+                open[index >>> 6] |= 1L << index;
+        }
+        goals = maze.goals();
+        goalDistance = new GoalDistance(maze);
+    }
+
+    /**
+     * Returns the number of jump points expanded by the last search.
+     *
+     * @return   the number of expanded jump points
+     */
+    @Override
+    public long expanded() {
+        return expanded;
+    }
+
+    /**
+     * Searches for and returns the path, as a list of node
+     * identifiers, that goes from the start node to a goal node in
+     * the maze. If such a path cannot be found (because there are no
+     * goals, or all goals are unreachable), the method returns
+     * <code>null</code>.
+     *
+     * @return   the list of node identifiers from the start node to a
+     *           goal node in the maze; <code>null</code> if such a path cannot
+     *           be found
+     */
+    @Override
+    public List<Integer> compute() {
+        expanded = 0;
+        // no goal to reach
+        if (goals.length == 0)
+            return null;
+        int player = maze.newPlayer(start);
+        int from = maze.cellIndex(start);
+        distance = new int[rows * cols];
+        parent = new int[rows * cols];
+        estimate = new int[rows * cols];
+        Arrays.fill(distance, INFINITY);
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        distance[from] = 0;
+        parent[from] = -1;
+        estimate[from] = goalDistance.estimate(from);
+        queue.add(entry(from));
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int current = (int) entry;
+            int f = (int) (entry >>> 32);
+            if (f > distance[current] + estimate[current])
+                continue;
+            expanded += 1;
+            if (maze.hasGoalAt(current)) {
+                maze.move(player, maze.cellId(current));
+                return pathTo(current);
+            }
+            int row = current / cols, col = current % cols;
+            int p = parent[current];
+            int dRow = p < 0 ? 0 : Integer.signum(row - p / cols);
+            int dCol = p < 0 ? 0 : Integer.signum(col - p % cols);
+            for (int direction = 0; direction < 4; direction++) {
+                int r = ROW_STEPS[direction], c = COL_STEPS[direction];
+                // never go back where the jump came from
+                if (p >= 0 && r == -dRow && c == -dCol)
+                    continue;
+                if (!isOpen(row + r, col + c))
+                    continue;
+                int jumpPoint = jump(row + r, col + c, r, c);
+                if (jumpPoint < 0)
+                    continue;
+                int d = distance[current]
+                    + Math.abs(jumpPoint / cols - row) + Math.abs(jumpPoint % cols - col);
+                if (d < distance[jumpPoint]) {
+                    if (distance[jumpPoint] == INFINITY)
+                        estimate[jumpPoint] = goalDistance.estimate(jumpPoint);
+                    distance[jumpPoint] = d;
+                    parent[jumpPoint] = current;
+                    queue.add(entry(jumpPoint));
+                }
+            }
+        }
+        return null;
+    }
+
+    // first jump point from open cell row, col going in direction dRow, dCol; -1 if none
+    private int jump(int row, int col, int dRow, int dCol) {
+        if (dRow == 0)
+            return jumpHorizontally(row, col, dCol);
+        while (isOpen(row, col)) {
+            if (isGoal(row, col))
+                return row * cols + col;
+            // forced neighbors: a side opens up that was closed behind
+            if ((isOpen(row, col - 1) && !isOpen(row - dRow, col - 1))
+                || (isOpen(row, col + 1) && !isOpen(row - dRow, col + 1)))
+                return row * cols + col;
+            if ((isOpen(row, col + 1) && jumpHorizontally(row, col + 1, 1) >= 0)
+                || (isOpen(row, col - 1) && jumpHorizontally(row, col - 1, -1) >= 0))
+                return row * cols + col;
+            row += dRow;
+        }
+        return -1;
+    }
+
+    private int jumpHorizontally(int row, int col, int dCol) {
+        while (isOpen(row, col)) {
+            if (isGoal(row, col))
+                return row * cols + col;
+            // forced neighbors: a side opens up that was closed behind
+            if ((isOpen(row - 1, col) && !isOpen(row - 1, col - dCol))
+                || (isOpen(row + 1, col) && !isOpen(row + 1, col - dCol)))
+                return row * cols + col;
+            col += dCol;
+        }
+        return -1;
+    }
+
+    private boolean isOpen(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols)
+            return false;
+        int index = row * cols + col;
+        return (open[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private boolean isGoal(int row, int col) {
+        return maze.hasGoalAt(row * cols + col);
+    }
+
+    private long entry(int index) {
+        return ((long) (distance[index] + estimate[index]) << 32) | index;
+    }
+
+    // path from the start to index, filling the straight lines between jump points
+    private List<Integer> pathTo(int index) {
+        long begin = System.nanoTime();
+        CompactPath.Builder path = CompactPath.Builder.to(maze, index);
+        for (int current = index; parent[current] >= 0; current = parent[current]) {
+            int p = parent[current];
+            int step = Integer.signum(p / cols - current / cols) * cols
+                + Integer.signum(p % cols - current % cols);
+            Direction direction = maze.direction(current, current + step);
+            while (path.current() != p)
+                path.add(direction);
+        }
+        maze.timings().record(Phase.PATH, begin);
+        return path.build().asList();
+    }
+}
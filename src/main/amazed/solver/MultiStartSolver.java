@@ -0,0 +1,128 @@
+package amazed.solver;
+
+import amazed.maze.CompactPath;
+import amazed.maze.DistanceField;
+import amazed.maze.Maze;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <code>MultiStartSolver</code> answers batches of queries on a
+ * <code>Maze</code>, each asking for a path from a different start
+ * node to the nearest goal.
+ * <p>
+ * Instead of searching from every start node, the solver relies on
+ * the distance field of the maze (see <code>DistanceField</code>): a
+ * single breadth-first search that starts from all goals at once,
+ * computed the first time the maze needs it and shared by all
+ * queries. The distance from a start node is then looked up, and a
+ * path is reconstructed by repeatedly stepping to a neighbor one step
+ * closer to a goal, which plays the role of the predecessor relation
+ * of a forward search. The queries of a batch are answered in
+ * parallel by fork/join tasks, each handling a range of start nodes.
+ * <p>
+ * The paths returned are shortest paths. Since the search does not
+ * begin at the start node of the maze, no player is animated.
+ */
+
+public class MultiStartSolver {
+
+    // number of queries answered sequentially by a single task
+    private static final int QUERIES_PER_TASK = 64;
+
+    private final Maze maze;
+
+    /**
+     * Creates a solver that answers queries on <code>maze</code>.
+     *
+     * @param maze the maze to be searched
+     */
+    public MultiStartSolver(Maze maze) {
+        this.maze = maze;
+    }
+
+    /**
+     * Returns the length of a shortest path from every start node to
+     * the nearest goal.
+     *
+     * @param starts   identifiers of nodes in the maze
+     * @return         an array whose element <code>i</code> is the number of
+     *                 steps from <code>starts[i]</code> to the nearest goal, or
+     *                 {@link DistanceField#UNREACHABLE} if no goal can be
+     *                 reached from <code>starts[i]</code>
+     */
+    public int[] distances(int[] starts) {
+        DistanceField field = maze.distanceField();
+        int[] result = new int[starts.length];
+        new QueryTask(field, starts, result, null, 0, starts.length).invoke();
+        return result;
+    }
+
+    /**
+     * Returns a shortest path from every start node to the nearest
+     * goal.
+     *
+     * @param starts   identifiers of nodes in the maze
+     * @return         a list whose element <code>i</code> is the list of node
+     *                 identifiers from <code>starts[i]</code> to a goal, or
+     *                 <code>null</code> if no goal can be reached from
+     *                 <code>starts[i]</code>
+     */
+    public List<List<Integer>> paths(int[] starts) {
+        DistanceField field = maze.distanceField();
+        List<List<Integer>> result = new ArrayList<>(starts.length);
+        for (int i = 0; i < starts.length; i++)
+            result.add(null);
+        new QueryTask(field, starts, new int[starts.length], result, 0, starts.length).invoke();
+        return result;
+    }
+
+    // the path from cell index start, of distance steps, to a goal
+    private List<Integer> pathFrom(DistanceField field, int start, int distance) {
+        CompactPath.Builder path = CompactPath.Builder.from(maze, start);
+        for (int step = 0; step < distance; step++)
+            path.add(field.nextStep(path.current()));
+        return path.build().asList();
+    }
+
+    // answers queries [from, to): distances into distances and, if
+    // paths is not null, paths into paths
+    private class QueryTask extends RecursiveAction {
+        private final DistanceField field;
+        private final int[] starts;
+        private final int[] distances;
+        private final List<List<Integer>> paths;
+        private final int from;
+        private final int to;
+
+        QueryTask(DistanceField field, int[] starts, int[] distances,
+                  List<List<Integer>> paths, int from, int to) {
+            this.field = field;
+            this.starts = starts;
+            this.distances = distances;
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > QUERIES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new QueryTask(field, starts, distances, paths, from, middle),
+                          new QueryTask(field, starts, distances, paths, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int index = maze.cellIndex(starts[i]);
+                int distance = index < 0 ? DistanceField.UNREACHABLE : field.distance(index);
+                distances[i] = distance;
+                // every task sets different elements of paths
+                if (paths != null && distance != DistanceField.UNREACHABLE)
+                    paths.set(i, pathFrom(field, index, distance));
+            }
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package amazed.solver;
 
+import amazed.maze.CellSet;
+import amazed.maze.CompactPath;
+import amazed.maze.Direction;
 import amazed.maze.Maze;
+import amazed.maze.OffHeapArena;
+import amazed.maze.Phase;
+import amazed.maze.PackedDirections;
 
 import java.util.concurrent.RecursiveTask;
 import java.util.List;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Stack;
-import java.util.Collections;
 
 /**
  * <code>SequentialSolver</code> implements a solver for
@@ -55,12 +57,14 @@ public class SequentialSolver extends RecursiveTask<List<Integer>> {
     protected Set<Integer> visited;
 
     /**
-     * If <code>(m -&gt; n)</code> is in <code>predecessor</code>, then
-     * the node with identifier <code>n</code> has been first visited
-     * from its neighbor node with identifier <code>m</code> during
-     * the search.
+     * If <code>predecessor</code> maps the cell index of the node with
+     * identifier <code>m</code> to direction <code>d</code>, then
+     * <code>m</code> has been first visited from its neighbor in
+     * direction <code>d</code> during the search. Directions are
+     * packed in two bits per cell, and only meaningful for nodes
+     * that have been reached.
      */
-    protected Map<Integer, Integer> predecessor;
+    protected PackedDirections predecessor;
 
     /**
      * The nodes in the maze to be visited next. Using a stack
@@ -89,11 +93,19 @@ public class SequentialSolver extends RecursiveTask<List<Integer>> {
     /**
      * Initializes <code>visited</code>, <code>predecessor</code>, and
      * <code>frontier</code> with empty data structures for sequential
-     * access.
+     * access. If the maze is stored off-heap, <code>visited</code> and
+     * <code>predecessor</code> are allocated in its arena.
      */
     protected void initStructures() {
-        visited = new HashSet<>();
-        predecessor = new HashMap<>();
+        OffHeapArena arena = maze.offHeapArena();
+        int cells = maze.rows() * maze.cols();
+        if (arena == null) {
+            visited = new HashSet<>();
+            predecessor = new PackedDirections(cells);
+        } else {
+            visited = new VisitedCells(maze, new CellSet(cells, arena));
+            predecessor = new PackedDirections(cells, arena);
+        }
         frontier = new Stack<>();
     }
 
@@ -110,10 +122,46 @@ public class SequentialSolver extends RecursiveTask<List<Integer>> {
      */
     @Override
     public List<Integer> compute() {
-        return depthFirstSearch();
+        SolverEvents.Search event = SolverEvents.enabled() ? new SolverEvents.Search() : null;
+        if (event != null)
+            event.begin();
+        List<Integer> path = depthFirstSearch();
+        if (event != null && event.shouldCommit()) {
+            event.solver = getClass().getSimpleName();
+            event.expanded = expanded();
+            event.pathLength = path == null ? -1 : path.size();
+            event.commit();
+        }
+        return path;
+    }
+
+    /**
+     * Returns the number of nodes expanded by the last search, for
+     * comparing solvers.
+     *
+     * @return   the number of expanded nodes; <code>0</code> if the
+     *           solver does not keep track of them
+     */
+    public long expanded() {
+        return visited == null ? 0 : visited.size();
+    }
+
+    /**
+     * Tests whether the solver is complete: whether its search finds
+     * a path whenever a goal can be reached from the start node, so
+     * that a search without a path shows that the maze has no
+     * solution.
+     *
+     * @return   <code>true</code>, unless a subclass overrides it
+     */
+    public boolean isComplete() {
+        return true;
     }
 
     private List<Integer> depthFirstSearch() {
+        // no goal to reach
+        if (maze.goalCount() == 0)
+            return null;
         // one player active on the maze at start
         int player = maze.newPlayer(start);
         // start with start node
@@ -142,7 +190,7 @@ public class SequentialSolver extends RecursiveTask<List<Integer>> {
                     // if nb has not been already visited,
                     // nb can be reached from current (i.e., current is nb's predecessor)
                     if (!visited.contains(nb))
-                        predecessor.put(nb, current);
+                        setPredecessor(nb, current);
                 }
             }
         }
@@ -150,12 +198,26 @@ public class SequentialSolver extends RecursiveTask<List<Integer>> {
         return null;
     }
 
+    /**
+     * Records that node <code>node</code> has been reached from its
+     * neighbor <code>from</code>.
+     *
+     * @param node   the identifier of a node in the maze
+     * @param from   the identifier of a node adjacent to <code>node</code>
+     */
+    protected void setPredecessor(int node, int from) {
+        int index = maze.cellIndex(node);
+        predecessor.set(index, maze.direction(index, maze.cellIndex(from)));
+    }
+
     /**
      * Returns the connected path, as a list of node identifiers, that
      * goes from node <code>from</code> to node <code>to</code>
      * following the inverse of relation <code>predecessor</code>. If
      * such a path cannot be reconstructed from
      * <code>predecessor</code>, the method returns <code>null</code>.
+     * The path is a view of a <code>CompactPath</code>, which stores
+     * two bits per move instead of a boxed identifier per node.
      *
      * @param from   the identifier of the initial node on the path
      * @param to     the identifier of the final node on the path
@@ -164,17 +226,24 @@ public class SequentialSolver extends RecursiveTask<List<Integer>> {
      *               <code>predecessor</code>; <code>null</code> otherwise
      */
     protected List<Integer> pathFromTo(int from, int to) {
-        List<Integer> path = new LinkedList<>();
-        Integer current = to;
-        while (current != from) {
-            path.add(current);
-            current = predecessor.get(current);
-            if (current == null)
+        long begin = System.nanoTime();
+        try {
+            int fromIndex = maze.cellIndex(from);
+            int toIndex = maze.cellIndex(to);
+            if (toIndex < 0)
                 return null;
+            CompactPath.Builder path = CompactPath.Builder.to(maze, toIndex);
+            // a path is at most as long as the number of cells
+            for (int steps = 0; path.current() != fromIndex; steps++) {
+                Direction direction = predecessor.get(path.current());
+                if (steps >= predecessor.size() || maze.step(path.current(), direction) < 0)
+                    return null;
+                path.add(direction);
+            }
+            return path.build().asList();
+        } finally {
+            maze.timings().record(Phase.PATH, begin);
         }
-        path.add(from);
-        Collections.reverse(path);
-        return path;
     }
 
 }
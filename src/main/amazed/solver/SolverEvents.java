@@ -0,0 +1,91 @@
+package amazed.solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JDK Flight Recorder events of the solvers, enabled by the
+// amazed.jfc profile. Events are only created when enabled() holds,
+// since loading the first event class loads much of jdk.jfr; fields
+// are set only if the event is to be committed
+class SolverEvents {
+
+    private static final boolean FORCED = Boolean.getBoolean("amazed.jfr");
+
+    // whether events may be recorded: Flight Recorder was started,
+    // from the command line or with jcmd, or -Damazed.jfr is set
+    static boolean enabled() {
+        return FORCED || FlightRecorder.isInitialized();
+    }
+
+    @Name("amazed.Search")
+    @Label("Search")
+    @Category({ "Amazed", "Solver" })
+    @Description("A sequential search from the start node to a goal")
+    @StackTrace(false)
+    static class Search extends Event {
+        @Label("Solver")
+        String solver;
+
+        @Label("Expanded Nodes")
+        long expanded;
+
+        @Label("Path Length")
+        @Description("Nodes on the path found, or -1 if no goal was found")
+        int pathLength;
+    }
+
+    @Name("amazed.Task")
+    @Label("Fork/Join Task")
+    @Category({ "Amazed", "Solver" })
+    @Description("The search of a fork/join task, until it finds a goal or runs out of nodes, "
+                 + "without joining its subtasks")
+    @StackTrace(false)
+    static class Task extends Event {
+        @Label("Depth")
+        @Description("Number of forks between the first task and this task")
+        int depth;
+
+        @Label("Expanded Nodes")
+        int expanded;
+
+        @Label("Forked Tasks")
+        int forked;
+
+        @Label("Goal Found")
+        boolean found;
+    }
+
+    @Name("amazed.Fork")
+    @Label("Fork")
+    @Category({ "Amazed", "Solver" })
+    @Description("Forking subtasks for the unvisited neighbors of a node")
+    @StackTrace(false)
+    static class Fork extends Event {
+        @Label("Depth")
+        int depth;
+
+        @Label("Forked Tasks")
+        int forked;
+    }
+
+    @Name("amazed.Join")
+    @Label("Join")
+    @Category({ "Amazed", "Solver" })
+    @Description("Waiting for the subtasks of a fork/join task")
+    @StackTrace(false)
+    static class Join extends Event {
+        @Label("Depth")
+        int depth;
+
+        @Label("Joined Tasks")
+        int joined;
+
+        @Label("Goal Found")
+        boolean found;
+    }
+}
@@ -0,0 +1,71 @@
+package amazed.solver;
+
+import amazed.maze.CellSet;
+import amazed.maze.Maze;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <code>VisitedCells</code> is a set of node identifiers backed by a
+ * <code>CellSet</code> of their cell indexes, so that solvers can
+ * keep their visited sets off-heap behind the <code>Set</code>
+ * interface. It is thread safe if elements are only added.
+ */
+
+class VisitedCells extends AbstractSet<Integer> {
+
+    private final Maze maze;
+    private final CellSet cells;
+
+    VisitedCells(Maze maze, CellSet cells) {
+        this.maze = maze;
+        this.cells = cells;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Integer))
+            return false;
+        int index = maze.cellIndex((Integer) o);
+        return index >= 0 && cells.contains(index);
+    }
+
+    @Override
+    public boolean add(Integer id) {
+        return cells.add(maze.cellIndex(id));
+    }
+
+    @Override
+    public int size() {
+        return (int) cells.size();
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private int next = advance(0);
+
+            private int advance(int index) {
+                while (index < cells.capacity() && !cells.contains(index))
+                    index += 1;
+                return index;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < cells.capacity();
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                int id = maze.cellId(next);
+                next = advance(next + 1);
+                return id;
+            }
+        };
+    }
+}